@@ -0,0 +1,39 @@
+package Connect4;
+
+
+/**
+ * The <code>BenchmarkPositions</code> class holds the fixed corpus of boards used by the benchmarks.
+ */
+final class BenchmarkPositions {
+
+    // Middle game boards, as the sequence of columns (1-based) played from an empty board with Player 1 to move
+    static final String[] MIDDLE_GAMES = {
+            "4453",
+            "44365",
+            "4432526",
+            "43442253",
+            "3435542216",
+            "44444326655",
+            "7162534455",
+            "1234567765",
+    };
+
+
+    private BenchmarkPositions() {
+    }
+
+
+    /**
+     * Plays the given columns on an empty 7x6 board, swapping the player after every move
+     * @param moves the columns (1-based) to play
+     * @return the resulting board
+     */
+    static Model play(String moves) {
+        Model board = new Model(7, 6, true, 1);
+        for (char move : moves.toCharArray()) {
+            board.move(move - '1');
+            board.swapPlayer();
+        }
+        return board;
+    }
+}
@@ -0,0 +1,75 @@
+package Connect4;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures a move with win detection and a fixed-depth search on boards of several sizes. Boards of up to 64 bits
+ * (7x6, 8x7, 9x6) take the single-long path of Model, the larger ones the multi-word path. Each board is half filled
+ * with random moves which do not end the game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BoardSizeBenchmark {
+
+    @Param({ "7x6", "8x7", "9x6", "9x7", "10x10", "16x16" })
+    public String size;
+
+    private Model board;
+    private ComputerPlayer computer;
+    private int column;
+
+
+    @Setup
+    public void setUp() {
+        int columns = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        int rows = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+
+        board = new Model(columns, rows, true, 1);
+        SplittableRandom random = new SplittableRandom(42);
+        while (board.getFreeSpaces() > columns * rows / 2) {
+            int col = random.nextInt(columns);
+            if (!board.move(col))
+                continue;
+            if (board.isGameOver())
+                board.unmove(col);
+            else
+                board.swapPlayer();
+        }
+
+        column = 0;
+        while (board.getColumnHeight(column) == rows)
+            column++;
+        computer = new ComputerPlayer(board, 1);
+    }
+
+
+    /**
+     * @return whether the move won, so the work is not eliminated
+     */
+    @Benchmark
+    public boolean moveAndUnmove() {
+        board.move(column);
+        boolean won = board.getWinner() != 0;
+        board.unmove(column);
+        return won;
+    }
+
+
+    /**
+     * @return the chosen column, so the work is not eliminated
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int search() {
+        computer.getTranspositionTable().clear();
+        return computer.getMove(4);
+    }
+}
@@ -0,0 +1,62 @@
+package Connect4;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the cost of the heuristic score of a leaf: read from the incrementally maintained evaluator, or
+ * recomputed by rescanning every window of the board, and the cost of scoring the threats with bitboard shifts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+    private Model board;
+    private ComputerPlayer computer;
+    private ThreatEvaluator threats;
+
+
+    @Setup
+    public void setUp() {
+        board = BenchmarkPositions.play(BenchmarkPositions.MIDDLE_GAMES[4]);
+        computer = new ComputerPlayer(board, 1);
+        computer.getMove(1);
+        threats = new ThreatEvaluator(board.getWidth(), board.getHeight());
+    }
+
+
+    @Benchmark
+    public int incrementalScore() {
+        return board.getScore(board.getPlayer());
+    }
+
+
+    @Benchmark
+    public int scanningScore() {
+        return computer.getScoreByScanning();
+    }
+
+
+    @Benchmark
+    public int threatScore() {
+        return board.getScore(board.getPlayer()) + threats.getScore(board, board.getPlayer());
+    }
+
+
+    /**
+     * Drops a chip, reads the score and removes the chip, which is what a leaf of the search costs
+     * @return the score, so the work is not eliminated
+     */
+    @Benchmark
+    public int leaf() {
+        board.move(3);
+        int score = board.getScore(2);
+        board.unmove(3);
+        return score;
+    }
+}
@@ -0,0 +1,42 @@
+package Connect4;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures how fast chips can be dropped into and removed from the board.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+    private Model board;
+
+
+    @Setup
+    public void setUp() {
+        board = BenchmarkPositions.play(BenchmarkPositions.MIDDLE_GAMES[3]);
+    }
+
+
+    /**
+     * Drops a chip in every non-full column and removes it again
+     * @return the number of free spaces, so the work is not eliminated
+     */
+    @Benchmark
+    public int moveUnmove() {
+        for (int column = 0; column < board.getWidth(); column++) {
+            if (board.move(column)) {
+                board.swapPlayer();
+                board.swapPlayer();
+                board.unmove(column);
+            }
+        }
+        return board.getFreeSpaces();
+    }
+}
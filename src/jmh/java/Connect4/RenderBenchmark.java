@@ -0,0 +1,84 @@
+package Connect4;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the cost of drawing a board after a move and after taking it back: rebuilt from scratch in a new
+ * <code>StringBuilder</code>, or patched by a <code>BoardRenderer</code> in each of its modes, into a buffered sink
+ * which discards the text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({ "PLAIN", "DELTA", "ANSI" })
+    public BoardRenderer.Mode mode;
+
+    private Model board;
+    private Writer sink;
+    private BoardRenderer renderer;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        board = BenchmarkPositions.play(BenchmarkPositions.MIDDLE_GAMES[4]);
+        sink = new BufferedWriter(Writer.nullWriter());
+        renderer = new BoardRenderer(sink, mode);
+        renderer.render(board);
+    }
+
+
+    @Benchmark
+    public void render() throws IOException {
+        board.move(3);
+        renderer.render(board);
+        board.unmove(3);
+        renderer.render(board);
+    }
+
+
+    @Benchmark
+    public void rebuild() throws IOException {
+        board.move(3);
+        sink.write(rebuild(board));
+        board.unmove(3);
+        sink.write(rebuild(board));
+    }
+
+
+    /**
+     * Builds the text of the whole board, the way <code>View.showBoard</code> did before boards were rendered
+     * incrementally
+     * @param board reference to the Model
+     * @return the text of the board
+     */
+    private static String rebuild(Model board) {
+        StringBuilder output = new StringBuilder();
+        output.append("-".repeat(board.getWidth() * 4 + 1)).append('\n');
+
+        output.append("| ");
+        for (int i = 1; i <= board.getWidth(); i++)
+            output.append(i).append(" | ");
+        output.append('\n');
+        output.append("-".repeat(board.getWidth() * 4 + 1)).append('\n');
+
+        for (int i = 0; i < board.getHeight(); i++) {
+            output.append("| ");
+            for (int j = 0; j < board.getWidth(); j++)
+                output.append(View.symbols[board.get(i, j)]).append(" | ");
+            output.append('\n');
+        }
+        output.append("-".repeat(board.getWidth() * 4 + 1)).append('\n');
+        return output.toString();
+    }
+}
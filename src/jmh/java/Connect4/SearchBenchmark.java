@@ -0,0 +1,54 @@
+package Connect4;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures a full search for the best move at several depths and with each search algorithm, over the corpus of
+ * middle game boards. Every search starts with an empty transposition table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({ "2", "4", "6", "8" })
+    public int depth;
+
+    @Param({ "MINIMAX", "PRINCIPAL_VARIATION" })
+    public SearchAlgorithm algorithm;
+
+    private Model[] boards;
+    private ComputerPlayer[] computers;
+
+
+    @Setup
+    public void setUp() {
+        boards = new Model[BenchmarkPositions.MIDDLE_GAMES.length];
+        computers = new ComputerPlayer[boards.length];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = BenchmarkPositions.play(BenchmarkPositions.MIDDLE_GAMES[i]);
+            computers[i] = new ComputerPlayer(boards[i], 1);
+            computers[i].setSearchAlgorithm(algorithm);
+        }
+    }
+
+
+    /**
+     * @return the sum of the chosen columns, so the work is not eliminated
+     */
+    @Benchmark
+    public int getMove() {
+        int sum = 0;
+        for (ComputerPlayer computer : computers) {
+            computer.getTranspositionTable().clear();
+            sum += computer.getMove(depth);
+        }
+        return sum;
+    }
+}
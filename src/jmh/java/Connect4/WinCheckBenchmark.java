@@ -0,0 +1,64 @@
+package Connect4;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares the ways of checking if the game is over: the whole-board <code>WinChecker</code>, on a
+ * <code>ForkJoinPool</code> or called sequentially, against the bitboard check and the winner kept by
+ * <code>Model.move</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WinCheckBenchmark {
+    private Model board;
+    private ForkJoinPool pool;
+
+
+    @Setup
+    public void setUp() {
+        board = BenchmarkPositions.play(BenchmarkPositions.MIDDLE_GAMES[5]);
+        pool = new ForkJoinPool();
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+
+    @Benchmark
+    public boolean forkJoinWinChecker() {
+        return pool.invoke(new WinChecker(board, 0, board.getWidth() - 1));
+    }
+
+
+    @Benchmark
+    public boolean sequentialWinChecker() {
+        WinChecker checker = new WinChecker(board, 0, board.getWidth() - 1);
+        boolean finished = false;
+        for (int column = 0; column < board.getWidth(); column++)
+            finished |= checker.isFinished(column);
+        return finished;
+    }
+
+
+    @Benchmark
+    public boolean bitboard() {
+        return board.hasFourInARow(board.getOtherPlayer());
+    }
+
+
+    @Benchmark
+    public boolean incremental() {
+        return board.isGameOver();
+    }
+}
@@ -0,0 +1,28 @@
+package Connect4;
+
+import java.util.List;
+
+
+/**
+ * The <code>Analysis</code> record holds the scores of the moves of a board found by
+ * <code>ComputerPlayer.analyze</code>, after the search has completed a given depth.
+ * @param depth how many moves ahead the moves were searched
+ * @param lines the moves with their scores, best first
+ */
+public record Analysis(int depth, List<Line> lines) {
+
+    /**
+     * A move with its score and the moves both players are expected to play after it
+     * @param column index of the column of the move
+     * @param score the score of the move, from the point of view of the player to move
+     * @param moves the principal variation: the columns of the move and of the best replies which follow it, as far
+     * as the transposition table still holds them
+     */
+    public record Line(int column, int score, int[] moves) {}
+
+
+    /**
+     * @return the best move, or null if the board has no legal move
+     */
+    public Line best() { return lines.isEmpty() ? null : lines.get(0); }
+}
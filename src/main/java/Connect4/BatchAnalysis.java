@@ -0,0 +1,267 @@
+package Connect4;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * The <code>BatchAnalysis</code> class computes the best move and its score for every board of a large number of
+ * recorded games, without the interactive interface. Games are read one per line in the move sequence format of
+ * <code>BoardSnapshot</code> (e.g. <code>4453</code>), and each line is replayed on a <code>Model</code>.
+ *
+ * The work is split into three stages connected by bounded queues: a reader thread which parses the input, a number
+ * of worker threads which replay the games and search their boards with a shared <code>Engine</code>, and the calling
+ * thread, which writes the results. When a stage falls behind, the queue in front of it fills up and the stages before
+ * it wait, so the corpus is never held in memory and results are written as soon as they are ready.
+ *
+ * Each board produces one output line, with tab-separated fields:
+ *      - the number of the game, counted from 1 in the order of the input
+ *      - the number of chips on the board
+ *      - the column played next in the game, or <code>-</code> after the last move
+ *      - the column of the best move
+ *      - the score of the best move, from the point of view of the player to move
+ * The lines of one game are written together and in order, but games may be written out of order. A line which is not
+ * a valid game produces a single line with the number of the game and an error message.
+ */
+public class BatchAnalysis {
+
+    // Fields
+
+    // A game which marks the end of the input for a worker
+    private static final Game END_OF_INPUT = new Game(0, "");
+
+    // A result which marks that a worker has finished
+    private static final Result WORKER_DONE = new Result("", 0);
+
+    private final Engine engine;
+
+    private final SearchLimits limits;
+
+    private final int threads;
+
+    private final int columns;
+    private final int rows;
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * @param columns number of columns of the boards of the games
+     * @param rows number of rows of the boards of the games
+     * @param engine the engine which searches the boards, shared by all the workers
+     * @param limits how far the search of each board may go
+     * @param threads the number of worker threads
+     */
+    public BatchAnalysis(int columns, int rows, Engine engine, SearchLimits limits, int threads) {
+        this.columns = columns;
+        this.rows = rows;
+        this.engine = engine;
+        this.limits = limits;
+        this.threads = threads;
+    }
+
+
+    /**
+     * A line of the input
+     * @param number the number of the game, counted from 1
+     * @param moves the columns played, in the move sequence format of <code>BoardSnapshot</code>
+     */
+    private record Game(long number, String moves) {}
+
+    /**
+     * The output of one game
+     * @param text the lines to write
+     * @param positions the number of boards which were searched
+     */
+    private record Result(String text, int positions) {}
+
+
+    // Analysis
+
+    /**
+     * Analyzes all the games of <code>input</code> and writes the results to <code>output</code>. Returns once every
+     * game has been written; the output is flushed but not closed.
+     * @param input the games, one per line
+     * @param output where the results are written
+     * @return the number of boards which were searched
+     * @throws IOException if the input cannot be read or the output cannot be written
+     * @throws InterruptedException if the calling thread is interrupted while waiting for results
+     */
+    public long run(BufferedReader input, Writer output) throws IOException, InterruptedException {
+        BlockingQueue<Game> games = new ArrayBlockingQueue<>(4 * threads);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(4 * threads);
+        IOException[] readError = new IOException[1];
+
+        Thread reader = new Thread(() -> {
+            try {
+                long number = 0;
+                String line;
+                while ((line = input.readLine()) != null)
+                    if (!line.isBlank())
+                        games.put(new Game(++number, line.strip()));
+            } catch (IOException e) {
+                readError[0] = e;
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                for (int i = 0; i < threads; i++)
+                    games.put(END_OF_INPUT);
+            } catch (InterruptedException ignored) {
+            }
+        }, "batch-reader");
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    for (Game game = games.take(); game != END_OF_INPUT; game = games.take())
+                        results.put(analyze(game));
+                    results.put(WORKER_DONE);
+                } catch (InterruptedException ignored) {
+                }
+            }, "batch-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        reader.setDaemon(true);
+        reader.start();
+
+        long positions = 0;
+        try {
+            for (int done = 0; done < threads; ) {
+                Result result = results.take();
+                if (result == WORKER_DONE) {
+                    done++;
+                } else {
+                    output.write(result.text());
+                    positions += result.positions();
+                }
+            }
+            output.flush();
+        } finally {
+            reader.interrupt();
+            for (Thread worker : workers)
+                worker.interrupt();
+        }
+
+        reader.join();
+        if (readError[0] != null)
+            throw readError[0];
+        return positions;
+    }
+
+
+    /**
+     * Analyzes a game, turning any failure into an error line so that the writer always hears from every game
+     * @param game the game to analyze
+     * @return the output lines of the game
+     */
+    private Result analyze(Game game) {
+        try {
+            return replay(game);
+        } catch (RuntimeException e) {
+            return error(game, e.toString());
+        }
+    }
+
+
+    /**
+     * Replays a game and searches every board on which the game is not over yet
+     * @param game the game to analyze
+     * @return the output lines of the game, or an error if the game is not valid
+     */
+    private Result replay(Game game) {
+        String moves = game.moves();
+        for (int i = 0; i < moves.length(); i++) {
+            int column = BoardSnapshot.column(moves.charAt(i));
+            if (column < 0 || column >= columns)
+                return error(game, "invalid column '" + moves.charAt(i) + "' at move " + (i + 1));
+        }
+
+        StringBuilder text = new StringBuilder();
+        Model board = new Model(columns, rows, true, 1);
+        int positions = 0;
+
+        for (int i = 0; i <= moves.length(); i++) {
+            if (board.isGameOver()) {
+                if (i < moves.length())
+                    return error(game, "move " + (i + 1) + " is played after the end of the game");
+                break;
+            }
+
+            SearchResult result = engine.search(board.snapshot(), limits);
+            positions++;
+
+            text.append(game.number()).append('\t')
+                .append(i).append('\t')
+                .append(i < moves.length() ? moves.charAt(i) : '-').append('\t')
+                .append(BoardSnapshot.symbol(result.move())).append('\t')
+                .append(result.score()).append('\n');
+
+            if (i == moves.length())
+                break;
+            if (!board.move(BoardSnapshot.column(moves.charAt(i))))
+                return error(game, "column " + moves.charAt(i) + " is full at move " + (i + 1));
+            board.swapPlayer();
+        }
+
+        return new Result(text.toString(), positions);
+    }
+
+
+    /**
+     * @param game the game which cannot be analyzed
+     * @param message what is wrong with it
+     * @return the output line reporting the error
+     */
+    private static Result error(Game game, String message) {
+        return new Result(game.number() + "\terror: " + message + "\n", 0);
+    }
+
+
+    /**
+     * Analyzes a file of games on the standard 7x6 board and reports the throughput on standard error.
+     * Launched with <code>mvn exec:java -Dexec.mainClass=Connect4.BatchAnalysis -Dexec.args="games.txt results.tsv
+     * depth threads"</code>. If the output file is <code>-</code>, the results are written to standard output.
+     * @param args the input file, the output file, the search depth and the number of worker threads
+     * @throws IOException if the input cannot be read or the output cannot be written
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: BatchAnalysis <games file> [<output file> | -] [depth] [threads]");
+            System.exit(1);
+        }
+
+        Path input = Path.of(args[0]);
+        String output = args.length > 1 ? args[1] : "-";
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        Engine engine = new Engine(7, 6, 256);
+        BatchAnalysis analysis = new BatchAnalysis(7, 6, engine, SearchLimits.depth(depth), threads);
+
+        long start = System.nanoTime();
+        long positions;
+        try (BufferedReader reader = Files.newBufferedReader(input);
+             Writer writer = output.equals("-") ? new BufferedWriter(new OutputStreamWriter(System.out))
+                                                : Files.newBufferedWriter(Path.of(output))) {
+            positions = analysis.run(reader, writer);
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        System.err.printf("Analyzed %d positions in %.1f s: %.0f positions/s on %d threads%n", positions,
+                          elapsed.toNanos() / 1e9, positions / (elapsed.toNanos() / 1e9), threads);
+    }
+}
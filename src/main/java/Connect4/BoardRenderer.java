@@ -0,0 +1,293 @@
+package Connect4;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The <code>BoardRenderer</code> class draws a board to a <code>Writer</code> turn after turn without rebuilding it.
+ * The borders and column numbers of each board size are laid out once in a template shared by all the renderers, and
+ * each renderer keeps a copy of it with the chips it last drew. When a board is rendered again, only the columns whose
+ * height changed are looked at, and depending on the mode:
+ *      - <code>PLAIN</code> -> the changed cells are patched into the copy, and the whole board is written in one call
+ *      - <code>DELTA</code> -> one line per changed cell, <code>s c r</code>, where <code>s</code> is the symbol of
+ *                              the cell, <code>c</code> its 1-based column and <code>r</code> its 1-based row from the
+ *                              bottom
+ *      - <code>ANSI</code>  -> ANSI escape sequences which move the cursor up to each changed cell, redraw it and move
+ *                              the cursor back below the board, which must be the last thing written to the terminal
+ * The first board, a board of another size or another game is always drawn in full; in <code>ANSI</code> mode a board
+ * of the same size is drawn over the previous one. The renderer also keeps the hash of the chips it drew, so a
+ * <code>Model</code> whose chips changed without changing the heights of its columns, because another game was loaded
+ * into it or a chip was taken back and replaced by one of the other player, is drawn in full as well.
+ *
+ * Nothing is flushed by <code>render</code>, so many boards can be written before a single <code>flush</code>. A
+ * renderer is not thread-safe.
+ */
+public final class BoardRenderer {
+
+    // Fields
+
+    /**
+     * How the changes since the last rendered board are written
+     */
+    public enum Mode { PLAIN, DELTA, ANSI }
+
+    private static final char ESCAPE = 27;
+
+    // The templates of the board sizes used so far, by columns * 256 + rows
+    private static final ConcurrentHashMap<Integer, Template> TEMPLATES = new ConcurrentHashMap<>();
+
+    private final Writer sink;
+    private final Mode mode;
+
+    // The template of the last rendered board, and a copy of it with the chips of that board
+    private Template template;
+    private char[] frame;
+
+    // The last rendered board, the heights of its columns and the hash of its chips when it was rendered
+    private Model board;
+    private int[] heights;
+    private long chipsHash;
+
+    // Where the text of a changed cell is put together, so that it is written in one call
+    private final char[] scratch = new char[32];
+
+
+    /**
+     * The text of an empty board of one size, and where its cells are in it
+     * @param chars the text, with a line break after the last line
+     * @param firstCell index of the top left cell
+     * @param lineLength length of the lines of cells, with the line break
+     * @param lines number of lines
+     */
+    private record Template(char[] chars, int firstCell, int lineLength, int lines) {
+
+        /**
+         * @param row index of a row, 0 at the top
+         * @param column index of a column
+         * @return index of the cell in the text
+         */
+        int cell(int row, int column) { return firstCell + row * lineLength + 4 * column; }
+    }
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * @param sink where the boards are written, preferably buffered
+     * @param mode how the changes between boards are written
+     */
+    public BoardRenderer(Writer sink, Mode mode) {
+        this.sink = sink;
+        this.mode = mode;
+    }
+
+
+    // Rendering
+
+    /**
+     * Writes the board, or what changed since the last board if it is the same game
+     * @param board reference to the Model
+     * @throws IOException if the sink cannot be written
+     */
+    public void render(Model board) throws IOException {
+        int columns = board.getWidth();
+        int rows = board.getHeight();
+
+        if (board != this.board) {
+            drawAll(board);
+            return;
+        }
+
+        // the changed columns must account for every change of the chips, or the board is drawn again
+        long hash = chipsHash;
+        for (int column = 0; column < columns; column++) {
+            int height = board.getColumnHeight(column);
+            for (int level = Math.min(height, heights[column]); level < Math.max(height, heights[column]); level++) {
+                int row = rows - 1 - level;
+                hash ^= board.chipKey(player(frame[template.cell(row, column)]), level, column)
+                        ^ board.chipKey(board.get(row, column), level, column);
+            }
+        }
+        if (hash != board.getChipsHash()) {
+            drawAll(board);
+            return;
+        }
+        chipsHash = hash;
+
+        for (int column = 0; column < columns; column++) {
+            int height = board.getColumnHeight(column);
+            if (height == heights[column])
+                continue;
+
+            for (int level = Math.min(height, heights[column]); level < Math.max(height, heights[column]); level++) {
+                int row = rows - 1 - level;
+                char symbol = View.symbols[board.get(row, column)];
+                frame[template.cell(row, column)] = symbol;
+                if (mode == Mode.DELTA)
+                    writeDelta(symbol, row, column, rows);
+                else if (mode == Mode.ANSI)
+                    writeAnsi(symbol, row, column);
+            }
+            heights[column] = height;
+        }
+
+        if (mode == Mode.PLAIN)
+            sink.write(frame);
+    }
+
+
+    /**
+     * Makes the next <code>render</code> draw the whole board, for example after other text was written below the
+     * board in <code>ANSI</code> mode
+     */
+    public void reset() { board = null; }
+
+
+    /**
+     * Writes everything rendered so far to the underlying output
+     * @throws IOException if the sink cannot be written
+     */
+    public void flush() throws IOException { sink.flush(); }
+
+
+    /**
+     * Draws the whole board, starting from the template of its size
+     * @param board reference to the Model
+     * @throws IOException if the sink cannot be written
+     */
+    private void drawAll(Model board) throws IOException {
+        int columns = board.getWidth();
+        int rows = board.getHeight();
+        Template previous = this.board == null ? null : template;
+        Template next = TEMPLATES.computeIfAbsent(columns * 256 + rows, key -> template(columns, rows));
+
+        if (next != template || frame == null) {
+            template = next;
+            frame = next.chars().clone();
+            heights = new int[columns];
+        }
+
+        for (int column = 0; column < columns; column++) {
+            for (int row = 0; row < rows; row++)
+                frame[template.cell(row, column)] = View.symbols[board.get(row, column)];
+            heights[column] = board.getColumnHeight(column);
+        }
+        chipsHash = board.getChipsHash();
+
+        // a board of the same size is drawn over the previous one
+        if (mode == Mode.ANSI && previous == template) {
+            int length = 0;
+            scratch[length++] = ESCAPE;
+            scratch[length++] = '[';
+            length = putNumber(template.lines(), length);
+            scratch[length++] = 'A';
+            scratch[length++] = '\r';
+            sink.write(scratch, 0, length);
+        }
+        sink.write(frame);
+        this.board = board;
+    }
+
+
+    /**
+     * Writes the line of a changed cell in <code>DELTA</code> mode
+     * @param symbol the new symbol of the cell
+     * @param row index of the row of the cell, 0 at the top
+     * @param column index of the column of the cell
+     * @param rows number of rows of the board
+     * @throws IOException if the sink cannot be written
+     */
+    private void writeDelta(char symbol, int row, int column, int rows) throws IOException {
+        int length = 0;
+        scratch[length++] = symbol;
+        scratch[length++] = ' ';
+        length = putNumber(column + 1, length);
+        scratch[length++] = ' ';
+        length = putNumber(rows - row, length);
+        scratch[length++] = '\n';
+        sink.write(scratch, 0, length);
+    }
+
+
+    /**
+     * Writes the escape sequences which redraw a changed cell in <code>ANSI</code> mode: save the cursor, move it up
+     * to the line of the cell and to its column, write the symbol and restore the cursor
+     * @param symbol the new symbol of the cell
+     * @param row index of the row of the cell, 0 at the top
+     * @param column index of the column of the cell
+     * @throws IOException if the sink cannot be written
+     */
+    private void writeAnsi(char symbol, int row, int column) throws IOException {
+        int length = 0;
+        scratch[length++] = ESCAPE;
+        scratch[length++] = '7';
+        scratch[length++] = ESCAPE;
+        scratch[length++] = '[';
+        length = putNumber(template.lines() - 3 - row, length);
+        scratch[length++] = 'A';
+        scratch[length++] = ESCAPE;
+        scratch[length++] = '[';
+        length = putNumber(3 + 4 * column, length);
+        scratch[length++] = 'G';
+        scratch[length++] = symbol;
+        scratch[length++] = ESCAPE;
+        scratch[length++] = '8';
+        sink.write(scratch, 0, length);
+    }
+
+
+    /**
+     * @param symbol the symbol of a cell
+     * @return the player whose chip the symbol shows, or 0 for an empty cell
+     */
+    private static int player(char symbol) {
+        return symbol == View.symbols[1] ? 1 : symbol == View.symbols[2] ? 2 : 0;
+    }
+
+
+    /**
+     * Puts a small non-negative number into <code>scratch</code> without building a string
+     * @param number the number
+     * @param length the number of characters already in <code>scratch</code>
+     * @return the number of characters in <code>scratch</code> after the number
+     */
+    private int putNumber(int number, int length) {
+        if (number >= 10)
+            length = putNumber(number / 10, length);
+        scratch[length] = (char) ('0' + number % 10);
+        return length + 1;
+    }
+
+
+    /**
+     * Lays out an empty board: a border, the column numbers, a border, the rows of cells and a border
+     * @param columns number of columns
+     * @param rows number of rows
+     * @return the template
+     */
+    private static Template template(int columns, int rows) {
+        StringBuilder text = new StringBuilder();
+        String border = "-".repeat(columns * 4 + 1) + "\n";
+
+        text.append(border).append("| ");
+        for (int i = 1; i <= columns; i++)
+            text.append(i).append(" | ");
+        text.append('\n').append(border);
+
+        int firstCell = text.length() + 2;
+        for (int row = 0; row < rows; row++) {
+            text.append("| ");
+            for (int column = 0; column < columns; column++)
+                text.append(View.symbols[0]).append(" | ");
+            text.append('\n');
+        }
+        text.append(border);
+
+        char[] chars = new char[text.length()];
+        text.getChars(0, chars.length, chars, 0);
+        return new Template(chars, firstCell, columns * 4 + 3, rows + 4);
+    }
+}
@@ -0,0 +1,339 @@
+package Connect4;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * The <code>BoardSnapshot</code> class is an immutable copy of the state of a <code>Model</code>: the dimensions of
+ * the board, the bitboards of both players and the player who has the current turn. Snapshots are taken with
+ * <code>Model.snapshot</code> and loaded back with <code>Model.load</code>, and can be shared freely between threads.
+ *
+ * A snapshot can also be written as a single <code>long</code> key (for boards which fit in a single long) or as the
+ * sequence of moves of a game which reaches it, one character per move: the columns are numbered from 1 to 9 and then
+ * from <code>a</code> to <code>g</code> for columns 10 to 16, so <code>4453</code> is a game on a 7x6 board. Games
+ * always start with Player 1. The hash of a snapshot is the Zobrist hash <code>Model.getHash</code> returns for the
+ * same board.
+ */
+public final class BoardSnapshot {
+
+    // Fields
+
+    private final int columns;
+    private final int rows;
+
+    // 1 if it is Player 1's turn, 2 if it is player 2's turn
+    private final int playerTurn;
+
+    // Bitboards in the same layout as in Model. Boards which do not fit in a single long use the arrays instead, and
+    // the arrays are null for the boards which do.
+    private final long player1Chips;
+    private final long player2Chips;
+    private final long[] player1Words;
+    private final long[] player2Words;
+
+    // The Zobrist hash of the board, as computed by Model
+    private final long hash;
+
+
+    // Constructors
+
+    /**
+     * Package-private constructor, snapshots are created through <code>Model.snapshot</code>.
+     * @param columns number of columns in the board
+     * @param rows number of rows in the board
+     * @param playerTurn the player who has the current turn
+     * @param player1Chips the bitboard of the cells occupied by Player 1
+     * @param player2Chips the bitboard of the cells occupied by Player 2
+     */
+    BoardSnapshot(int columns, int rows, int playerTurn, long player1Chips, long player2Chips) {
+        this.columns = columns;
+        this.rows = rows;
+        this.playerTurn = playerTurn;
+        this.player1Chips = player1Chips;
+        this.player2Chips = player2Chips;
+        this.player1Words = null;
+        this.player2Words = null;
+        this.hash = Model.hash(playerTurn, player1Chips, player2Chips);
+    }
+
+
+    /**
+     * Package-private constructor for boards which do not fit in a single long, snapshots are created through
+     * <code>Model.snapshot</code>. The arrays are not copied.
+     * @param columns number of columns in the board
+     * @param rows number of rows in the board
+     * @param playerTurn the player who has the current turn
+     * @param player1Words the multi-word bitboard of the cells occupied by Player 1
+     * @param player2Words the multi-word bitboard of the cells occupied by Player 2
+     */
+    BoardSnapshot(int columns, int rows, int playerTurn, long[] player1Words, long[] player2Words) {
+        this.columns = columns;
+        this.rows = rows;
+        this.playerTurn = playerTurn;
+        this.player1Chips = 0;
+        this.player2Chips = 0;
+        this.player1Words = player1Words;
+        this.player2Words = player2Words;
+        this.hash = Model.hash(playerTurn, player1Words, player2Words);
+    }
+
+
+    /**
+     * Replays a game from the empty board
+     * @param columns number of columns in the board
+     * @param rows number of rows in the board
+     * @param moves the columns played, one character per move, starting with Player 1
+     * @return the board at the end of the game
+     * @throws IllegalArgumentException if a move is not a column of the board, is played in a full column or is
+     * played after the end of the game
+     */
+    public static BoardSnapshot fromMoves(int columns, int rows, String moves) {
+        Model board = new Model(columns, rows, false, 1);
+
+        for (int i = 0; i < moves.length(); i++) {
+            int column = column(moves.charAt(i));
+            if (column < 0 || column >= columns)
+                throw new IllegalArgumentException("Invalid column '" + moves.charAt(i) + "' at move " + (i + 1));
+            if (board.isGameOver())
+                throw new IllegalArgumentException("Move " + (i + 1) + " is played after the end of the game");
+            if (!board.move(column))
+                throw new IllegalArgumentException("Column " + moves.charAt(i) + " is full at move " + (i + 1));
+            board.swapPlayer();
+        }
+
+        return board.snapshot();
+    }
+
+
+    /**
+     * Rebuilds a snapshot from the value returned by <code>getKey</code>
+     * @param columns number of columns in the board
+     * @param rows number of rows in the board
+     * @param key the key of the board
+     * @param playerTurn the player who has the current turn
+     * @return the board with the given key
+     * @throws IllegalArgumentException if the board does not fit in a single long
+     */
+    public static BoardSnapshot fromKey(int columns, int rows, long key, int playerTurn) {
+        if (columns * (rows + 1) > Long.SIZE)
+            throw new IllegalArgumentException("A " + columns + "x" + rows + " board does not fit in a single long");
+
+        long player1Chips = 0;
+        long player2Chips = 0;
+        for (int column = 0; column < columns; column++) {
+            int shift = column * (rows + 1);
+            long bits = (key >>> shift) & ((1L << rows + 1) - 1);
+
+            // the highest set bit of the column marks its height, the bits below it are Player 1's chips
+            int height = Long.SIZE - 1 - Long.numberOfLeadingZeros(bits);
+            long chips = (1L << height) - 1;
+            player1Chips |= (bits - (1L << height)) << shift;
+            player2Chips |= (chips & ~(bits - (1L << height))) << shift;
+        }
+
+        return new BoardSnapshot(columns, rows, playerTurn, player1Chips, player2Chips);
+    }
+
+
+    // Getters
+
+    /**
+     * @return number of columns in the board
+     */
+    public int getColumns() { return columns; }
+
+    /**
+     * @return number of rows in the board
+     */
+    public int getRows() { return rows; }
+
+    /**
+     * @return the player who has the current turn
+     */
+    public int getPlayer() { return playerTurn; }
+
+    /**
+     * @param row index of a row in the board, 0 being the top row
+     * @param column index of a column in the board
+     * @return value at position (<code>row</code>, <code>column</code>) in the board
+     */
+    public int get(int row, int column) {
+        int index = column * (rows + 1) + rows - 1 - row;
+        if (player1Words != null)
+            return MultiWordBitboard.isSet(player1Words, index) ? 1
+                 : MultiWordBitboard.isSet(player2Words, index) ? 2
+                 : 0;
+
+        return (player1Chips >>> index & 1) != 0 ? 1 : (player2Chips >>> index & 1) != 0 ? 2 : 0;
+    }
+
+    /**
+     * @return the Zobrist hash of the board, equal to <code>Model.getHash</code> for the same board
+     */
+    public long getHash() { return hash; }
+
+    /**
+     * Encodes the chips of the board in a single long: for every column, Player 1's chips, with one more bit set
+     * right above the top chip. The key is different for every placement of the chips, but it does not include the
+     * player who has the current turn.
+     * @return the key of the board
+     * @throws IllegalStateException if the board does not fit in a single long
+     */
+    public long getKey() {
+        if (player1Words != null)
+            throw new IllegalStateException("A " + columns + "x" + rows + " board does not fit in a single long");
+
+        long bottom = 0;
+        for (int column = 0; column < columns; column++)
+            bottom |= 1L << column * (rows + 1);
+        return player1Chips + (player1Chips | player2Chips) + bottom;
+    }
+
+    /**
+     * @return the bitboard of the cells occupied by Player 1
+     */
+    long getPlayer1Chips() { return player1Chips; }
+
+    /**
+     * @return the bitboard of the cells occupied by Player 2
+     */
+    long getPlayer2Chips() { return player2Chips; }
+
+    /**
+     * @return the multi-word bitboard of the cells occupied by Player 1, null if the board fits in a single long. The
+     * array must not be modified.
+     */
+    long[] getPlayer1Words() { return player1Words; }
+
+    /**
+     * @return the multi-word bitboard of the cells occupied by Player 2, null if the board fits in a single long. The
+     * array must not be modified.
+     */
+    long[] getPlayer2Words() { return player2Words; }
+
+
+    // Move sequences
+
+    /**
+     * Finds a game which starts with Player 1 and ends on this board, by taking the chips off the board again, the
+     * last player's first. The game is not unique; among the possible games, the one which takes chips off the
+     * rightmost columns first is returned.
+     * @return the moves of the game, or null if no game starting with Player 1 ends on this board
+     */
+    public String toMoves() {
+        int[] heights = new int[columns];
+        int chips = 0;
+        for (int column = 0; column < columns; column++) {
+            while (heights[column] < rows && get(rows - 1 - heights[column], column) != 0)
+                heights[column]++;
+            chips += heights[column];
+        }
+
+        // Player 1 moves first, so the player to move follows from the number of chips
+        if (playerTurn != (chips % 2 == 0 ? 1 : 2))
+            return null;
+
+        char[] moves = new char[chips];
+        return unplay(heights, chips, moves, new HashSet<>()) ? new String(moves) : null;
+    }
+
+
+    /**
+     * Takes the chips off the board one at a time, backtracking when the player who should have made the last move
+     * has no chip at the top of any column. Before the last move, nobody may have 4-in-a-row.
+     * @param heights the number of chips left in each column, restored before returning
+     * @param chips the number of chips left
+     * @param moves receives the move which placed each chip
+     * @param deadEnds the columns heights, as strings, from which no game could be found
+     * @return true if a game was found
+     */
+    private boolean unplay(int[] heights, int chips, char[] moves, Set<String> deadEnds) {
+        if (chips == 0)
+            return true;
+
+        String state = Arrays.toString(heights);
+        if (deadEnds.contains(state))
+            return false;
+
+        int player = chips % 2 == 1 ? 1 : 2;
+        for (int column = columns - 1; column >= 0; column--) {
+            if (heights[column] == 0 || get(rows - heights[column], column) != player)
+                continue;
+
+            heights[column]--;
+            moves[chips - 1] = symbol(column);
+            boolean found = !hasFourInARow(heights) && unplay(heights, chips - 1, moves, deadEnds);
+            heights[column]++;
+            if (found)
+                return true;
+        }
+
+        deadEnds.add(state);
+        return false;
+    }
+
+
+    /**
+     * @param heights the number of chips taken into account in each column
+     * @return true if either player has 4-in-a-row among those chips
+     */
+    private boolean hasFourInARow(int[] heights) {
+        long[] player1 = MultiWordBitboard.create(columns * (rows + 1));
+        long[] player2 = MultiWordBitboard.create(columns * (rows + 1));
+        for (int column = 0; column < columns; column++)
+            for (int height = 0; height < heights[column]; height++)
+                MultiWordBitboard.set(get(rows - 1 - height, column) == 1 ? player1 : player2,
+                                      column * (rows + 1) + height);
+
+        for (int shift : new int[] { 1, rows + 1, rows, rows + 2 })
+            if (MultiWordBitboard.hasFourInARow(player1, shift) || MultiWordBitboard.hasFourInARow(player2, shift))
+                return true;
+        return false;
+    }
+
+
+    /**
+     * @param symbol a character of a move sequence
+     * @return the index of the column, or -1 if the character is not a column
+     */
+    static int column(char symbol) {
+        if (symbol >= '1' && symbol <= '9')
+            return symbol - '1';
+        if (symbol >= 'a' && symbol <= 'g')
+            return symbol - 'a' + 9;
+        if (symbol >= 'A' && symbol <= 'G')
+            return symbol - 'A' + 9;
+        return -1;
+    }
+
+
+    /**
+     * @param column index of a column
+     * @return the character of the column in a move sequence
+     */
+    static char symbol(int column) {
+        return column < 9 ? (char) ('1' + column) : (char) ('a' + column - 9);
+    }
+
+
+    // Object methods
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof BoardSnapshot other))
+            return false;
+
+        return columns == other.columns && rows == other.rows && playerTurn == other.playerTurn &&
+               player1Chips == other.player1Chips && player2Chips == other.player2Chips &&
+               Arrays.equals(player1Words, other.player1Words) && Arrays.equals(player2Words, other.player2Words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash) * 31 + (columns << 8 | rows);
+    }
+}
@@ -1,25 +1,254 @@
 package Connect4;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * The <code>ComputerPlayer</code> class represents the AI opponent.
  */
 public class ComputerPlayer {
+    // Size of the transposition table used when no size is given, in MB
+    public static final int DEFAULT_TABLE_SIZE = 16;
+
+    // Half the width of the aspiration window of the principal variation search
+    static final int ASPIRATION_WINDOW = 8;
+
+    // Mixed into the hash of a board when searching for Player 1, since the scores depend on the point of view
+    static final long PLAYER_1_PERSPECTIVE = 0x5bd1e9955bd1e995L;
+
     private Model board;
 
+    private final TranspositionTable table;
+
+    // False when the table is shared by concurrent searches, whose owner then decides when a new search starts
+    private boolean agesTable = true;
+
     private int bestMove;
 
+    // The player the computer is searching for, all scores are from this player's point of view
+    private int player;
+
+    // The depth at which the current search was started
+    private int searchDepth;
+
+    // The best move found by the previous iteration of iterative deepening, -1 if there is none
+    private int previousBestMove;
+
+    // System.nanoTime() after which a timed search must stop, Long.MAX_VALUE if the search has no time limit
+    private long deadline;
+
+    // True if the current iteration ran out of time and its results must be discarded
+    private boolean aborted;
+
+    // Set by another thread to abort the current search and every later one
+    private volatile boolean stopped;
+
+    // Counters of the current search: boards visited (also used to check the clock only every so often), boards
+    // scored with the heuristic, cutoffs, cutoffs by the first move tried, and boards found in the table
+    private long nodes;
+    private long leafEvaluations;
+    private long betaCutoffs;
+    private long firstMoveCutoffs;
+    private long tableHits;
+
+    // System.nanoTime() when the current search started
+    private long startTime;
+
+    // Flight Recorder event of the current search, its duration is the latency of the search
+    private SearchEvent event;
+
+    // The statistics of the last completed search
+    private SearchStats lastStats;
+
+    // Where the statistics of every search are added up, null if they are not collected
+    private EngineMetrics metrics;
+
+    // The scores of the windows used by the heuristic evaluation
+    private HeuristicWeights weights = HeuristicWeights.DEFAULT;
+
+    // Scores the threats of the board when the threat evaluation is used, null otherwise
+    private ThreatEvaluator threats;
+
+    // Precomputed moves looked up before searching, null if there are none
+    private PositionDatabase database;
+
+    // True if the principal variation search is used instead of minimax
+    private boolean usePrincipalVariation;
+
+    // The heuristics used to order the moves at each node
+    private boolean useTableMove = true;
+    private boolean useCenterFirst = true;
+    private boolean useKillerMoves = true;
+    private boolean useHistory = true;
+
+    // The number of free spaces at the root of the current search, used to work out how deep in the tree a node is
+    private int rootFreeSpaces;
+
+    // True if the board at the root of the current search is its own mirror image, so that only the moves in the
+    // left half and the center column need to be searched there
+    private boolean rootSymmetric;
+
+    // Columns from the center outwards
+    private final int[] centerOrder;
+
+    // The two most recent moves which caused a cutoff, for each number of moves from the root
+    private final int[][] killerMoves;
+
+    // For each player and column, how much the column has contributed to cutoffs in the current search
+    private final int[][] history;
+
+    // For each number of moves from the root, space to sort the moves of a node and their ordering keys
+    private final int[][] moveBuffers;
+    private final int[][] keyBuffers;
+
 
     /**
      * Public constructor.
      * @param board reference to the Model
      */
     public ComputerPlayer(Model board) {
+        this(board, DEFAULT_TABLE_SIZE);
+    }
+
+
+    /**
+     * Public constructor.
+     * @param board reference to the Model
+     * @param tableSizeInMegabytes the memory the transposition table may use, in MB
+     */
+    public ComputerPlayer(Model board, int tableSizeInMegabytes) {
+        this(board, new TranspositionTable(tableSizeInMegabytes));
+    }
+
+
+    /**
+     * Package-private constructor, used by searches which share one transposition table between several players.
+     * @param board reference to the Model
+     * @param table the transposition table to use
+     */
+    ComputerPlayer(Model board, TranspositionTable table) {
         this.board = board;
+        this.table = table;
         this.bestMove = 3;
+
+        int width = board.getWidth();
+        int plies = width * board.getHeight() + 1;
+
+        this.centerOrder = new int[width];
+        for (int i = 0; i < width; i++)
+            centerOrder[i] = width / 2 + (i % 2 == 0 ? i / 2 : -(i + 1) / 2);
+
+        this.killerMoves = new int[plies][2];
+        this.history = new int[3][width];
+        this.moveBuffers = new int[plies][width];
+        this.keyBuffers = new int[plies][width];
     }
 
 
+    /**
+     * Package-private, used when the transposition table is shared by searches which run at the same time.
+     * @param agesTable false if the searches of this player must not tell the table that a new search has started,
+     * true by default
+     */
+    void setAgesTable(boolean agesTable) { this.agesTable = agesTable; }
+
+
+    /**
+     * Sets the heuristics used to order the moves at each node of the search. All of them are used by default.
+     * @param moveOrdering the heuristics to use
+     */
+    public void setMoveOrdering(EnumSet<MoveOrdering> moveOrdering) {
+        useTableMove = moveOrdering.contains(MoveOrdering.TABLE_MOVE);
+        useCenterFirst = moveOrdering.contains(MoveOrdering.CENTER_FIRST);
+        useKillerMoves = moveOrdering.contains(MoveOrdering.KILLER_MOVES);
+        useHistory = moveOrdering.contains(MoveOrdering.HISTORY);
+    }
+
+    /**
+     * @return the number of boards visited by the last search
+     */
+    public long getNodes() { return nodes; }
+
+    /**
+     * @return the statistics of the last search, or null if there has been none
+     */
+    public SearchStats getLastSearchStats() { return lastStats; }
+
+    /**
+     * @param metrics where the statistics of every search should be added up, or null to stop collecting them
+     */
+    public void setMetrics(EngineMetrics metrics) { this.metrics = metrics; }
+
+
+    /**
+     * Sets the scores of the 4-cell windows used by the heuristic evaluation. The default weights are
+     * <code>HeuristicWeights.DEFAULT</code>. The transposition table does not know about the weights, so players with
+     * different weights must not share a table.
+     * @param weights the weights to use
+     */
+    public void setWeights(HeuristicWeights weights) {
+        this.weights = weights.equals(HeuristicWeights.DEFAULT) ? HeuristicWeights.DEFAULT : weights;
+    }
+
+
+    /**
+     * Sets the tree search used to find the best move. The default is <code>SearchAlgorithm.MINIMAX</code>. Both
+     * searches store the same scores in the transposition table, so players using either can share one.
+     * @param algorithm the search to use
+     */
+    public void setSearchAlgorithm(SearchAlgorithm algorithm) {
+        usePrincipalVariation = algorithm == SearchAlgorithm.PRINCIPAL_VARIATION;
+    }
+
+
+    /**
+     * Sets the heuristic evaluation used to score the leaves of the search. The default is
+     * <code>Evaluation.WINDOWS</code>. As with the weights, players with different evaluations must not share a
+     * transposition table.
+     * @param evaluation the evaluation to use
+     * @throws IllegalArgumentException if the threat evaluation is chosen for a board which does not fit in a single
+     * long
+     */
+    public void setEvaluation(Evaluation evaluation) {
+        if (evaluation == Evaluation.THREATS && threats == null)
+            threats = new ThreatEvaluator(board.getWidth(), board.getHeight());
+        else if (evaluation == Evaluation.WINDOWS)
+            threats = null;
+    }
+
+
+    /**
+     * Sets the database of precomputed moves which is looked up before searching. When the current board is in the
+     * database, its move is played without searching.
+     * @param database a database generated with <code>PositionDatabase.generateMoves</code>, or null to always search
+     * @throws IllegalArgumentException if the database is keyed by bitboards or is for a board with different
+     * dimensions
+     */
+    public void setDatabase(PositionDatabase database) {
+        if (database != null && database.getKeyType() != PositionDatabase.KEY_ZOBRIST)
+            throw new IllegalArgumentException("The database is not keyed by the hash of the boards");
+        if (database != null && (database.getColumns() != board.getWidth() || database.getRows() != board.getHeight()))
+            throw new IllegalArgumentException("The database is for a " + database.getColumns() + "x" +
+                                               database.getRows() + " board");
+        this.database = database;
+    }
+
+
+    /**
+     * @return the board this player searches on
+     */
+    Model getBoard() { return board; }
+
+    /**
+     * @return the transposition table of this player, which holds the hit, miss and overwrite counters
+     */
+    public TranspositionTable getTranspositionTable() { return table; }
+
+
     /**
      * Counts the number of free spaces, spaces occupied by player 1 and spaces occupied by player 2 in a 4-cell
      * window starting from the cell (<code>row</code>, <code>column</code>) and going in the direction <code>d</code>
@@ -55,30 +284,46 @@ public class ComputerPlayer {
     private int evaluate(int row, int column, Direction d) {
         int[] counts = count(row, column, d);
 
-        if (counts[board.getPlayer()] == 4)
-            return 100;
-        else if (counts[board.getPlayer()] == 3 && counts[0] == 1)
-            return 16;
-        else if (counts[board.getPlayer()] == 2 && counts[0] == 2)
-            return 8;
+        if (counts[player] == 4)
+            return weights.getFour();
+        else if (counts[player] == 3 && counts[0] == 1)
+            return weights.getThree();
+        else if (counts[player] == 2 && counts[0] == 2)
+            return weights.getTwo();
 
-        if (counts[board.getOtherPlayer()] == 4)
-            return -100;
-        else if (counts[board.getOtherPlayer()] == 3 && counts[0] == 1)
-            return -32;
-        else if (counts[board.getOtherPlayer()] == 2 && counts[0] == 2)
-            return -8;
+        if (counts[3 - player] == 4)
+            return weights.getOpponentFour();
+        else if (counts[3 - player] == 3 && counts[0] == 1)
+            return weights.getOpponentThree();
+        else if (counts[3 - player] == 2 && counts[0] == 2)
+            return weights.getOpponentTwo();
 
         return 0;
     }
 
 
     /**
-     * Calculates the total score of the current state of the board by summing the scores of all 4-cell windows,
-     * starting from all cells in the board and going in all possible directions
+     * Calculates the total score of the current state of the board by summing the scores of all 4-cell windows.
+     * The Model keeps this sum up to date as chips are dropped and removed, so this only reads it. With the threat
+     * evaluation, the score of the threats of both players is added.
      * @return the total score of the current board
      */
     private int getScore() {
+        int score = weights == HeuristicWeights.DEFAULT ? board.getScore(player) : board.getScore(player, weights);
+        if (threats != null)
+            // stay below the score of a win, which a heuristic must never reach
+            score = Math.max(-999, Math.min(999, score + threats.getScore(board, player)));
+        return score;
+    }
+
+
+    /**
+     * Calculates the total score of the current state of the board by summing the scores of all 4-cell windows,
+     * starting from all cells in the board and going in all possible directions. This is the reference version of
+     * <code>getScore</code>, which rescans the whole board.
+     * @return the total score of the current board
+     */
+    int getScoreByScanning() {
         int score = 0;
 
         // Row score
@@ -105,59 +350,811 @@ public class ComputerPlayer {
 
     /**
      * Implements the minimax algorithm with fixed depth and alpha-beta pruning, getting the heuristic evaluation
-     * from the method <code>getScore</code>.
+     * from the method <code>getScore</code>. The players alternate on every level of the search, and a win is
+     * detected as soon as it happens, since <code>Model.move</code> keeps the winner up to date.
+     * Results are cached in the transposition table, and the moves are tried in the order given by
+     * <code>orderMoves</code>. If the deadline passes, the search is aborted and the returned score is meaningless.
      * @param depth how many more recursive steps we can perform before calculating the heuristic
      * @param alpha the best score on the current search path that the maximizing player can definitely achieve
      * @param beta the best score on the current search path that the minimizing player can definitely achieve
      * @return best score currently discovered
      */
     private int minimax(int depth, double alpha, double beta) {
-        if (board.getWinner() == 2)
+        if ((++nodes & 1023) == 0 && (System.nanoTime() >= deadline || stopped))
+            aborted = true;
+
+        if (aborted)
+            return 0;
+
+        if (board.getWinner() == player)
             return 1000;
 
-        if (board.getWinner() == 1)
+        if (board.getWinner() != 0)
             return -1000;
 
         if (board.getFreeSpaces() == 0)
             return 0;
 
-        if (depth == 0)
+        if (depth == 0) {
+            leafEvaluations++;
             return getScore();
+        }
+
+
+        long hash = tableKey(board, player);
+        long entry = table.probe(hash);
+        int tableMove = -1;
+
+        if (entry != 0) {
+            tableHits++;
+            tableMove = orient(board, TranspositionTable.move(entry));
+
+            // the root is always searched, so that the best move gets set
+            if (depth != searchDepth && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry);
+                switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT -> { return score; }
+                    case TranspositionTable.LOWER_BOUND -> alpha = Math.max(alpha, score);
+                    case TranspositionTable.UPPER_BOUND -> beta = Math.min(beta, score);
+                }
+                if (alpha >= beta)
+                    return score;
+            }
+        }
+
+        if (depth == searchDepth && previousBestMove >= 0)
+            tableMove = previousBestMove;
+        else if (!useTableMove)
+            tableMove = -1;
+
+        double originalAlpha = alpha;
+        double originalBeta = beta;
+
+        boolean maximizing = board.getPlayer() == player;
+        int bestValue = maximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int bestColumn = -1;
+
+        int ply = rootFreeSpaces - board.getFreeSpaces();
+        int[] moves = moveBuffers[ply];
+        int count = orderMoves(ply, tableMove, moves);
 
+        for (int i = 0; i < count; i++) {
+            int col = moves[i];
 
-        int bestValue = board.getPlayer() == 2 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            // the mirror image of a move in the left half of a symmetric board is just as good
+            if (depth == searchDepth && rootSymmetric && col > board.mirror(col))
+                continue;
 
-        for (int col = 0; col < board.getWidth(); col++) {
             if (board.move(col)) {
+                board.swapPlayer();
                 int value = minimax(depth - 1, alpha, beta);
+                board.swapPlayer();
                 board.unmove(col);
 
-                if ((board.getPlayer() == 2 && value > bestValue) || (board.getPlayer() == 1 && value < bestValue)) {
+                if (aborted)
+                    return 0;
+
+                if ((maximizing && value > bestValue) || (!maximizing && value < bestValue)) {
                     bestValue = value;
-                    bestMove = col;
+                    bestColumn = col;
+                    if (depth == searchDepth)
+                        bestMove = col;
 
-                    if (board.getPlayer() == 2) {
-                        if (value >= beta)
-                            return value;
+                    if (maximizing ? value >= beta : value <= alpha) {
+                        betaCutoffs++;
+                        if (i == 0)
+                            firstMoveCutoffs++;
+                        recordCutoff(ply, depth, col);
+                        break;
+                    }
+
+                    if (maximizing)
                         alpha = Math.max(alpha, value);
-                    } else {
-                        if (value <= alpha)
-                            return value;
+                    else
                         beta = Math.min(beta, value);
+                }
+            }
+        }
+
+        int bound = bestValue <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                  : bestValue >= originalBeta ? TranspositionTable.LOWER_BOUND
+                  : TranspositionTable.EXACT;
+        table.store(hash, bestValue, depth, bound, orient(board, bestColumn));
+
+        return bestValue;
+    }
+
+
+    /**
+     * A board and its mirror image share one entry in the transposition table, under the key of the canonical one
+     * @param board a board
+     * @param player the player the search is searching for
+     * @return the key of the board in the transposition table
+     */
+    static long tableKey(Model board, int player) {
+        long hash = board.getCanonicalHash();
+        return player == 1 ? hash ^ PLAYER_1_PERSPECTIVE : hash;
+    }
+
+
+    /**
+     * Converts a move between the board and the canonical board under whose key it is stored in the transposition
+     * table. The conversion is its own inverse.
+     * @param board a board
+     * @param move index of a column, or -1
+     * @return the move mirrored if the board is not canonical, otherwise the move itself
+     */
+    static int orient(Model board, int move) {
+        return move < 0 || board.isCanonical() ? move : board.mirror(move);
+    }
+
+
+    /**
+     * Computes the score and the principal variation of every legal move of the current board
+     * @param depth how many moves ahead to search
+     * @return the moves with their scores, best first
+     */
+    public Analysis analyze(int depth) {
+        return analyze(depth, null, board.getWidth(), null);
+    }
+
+
+    /**
+     * Computes the scores and principal variations of the best moves of the current board in a single search, using
+     * iterative deepening. Every move at the root is searched with the window the best moves so far leave open, so
+     * a move which cannot be one of the <code>lines</code> best only gets an upper bound, and all the moves share the
+     * transposition table and the move ordering. Only moves with exact scores are returned: a move whose upper bound
+     * ties with the last of the best lines is left out. On a symmetric board, the mirror image of a move gets its
+     * score.
+     * @param maxDepth the greatest depth to search to
+     * @param budget how long the search may take, or null for no time limit
+     * @param lines how many of the best moves to return, the width of the board for all of them
+     * @param listener called with the analysis of each depth as soon as it is completed, or null
+     * @return the analysis of the last completed depth
+     * @throws IllegalArgumentException if <code>lines</code> is not positive
+     */
+    public Analysis analyze(int maxDepth, Duration budget, int lines, Consumer<Analysis> listener) {
+        if (lines < 1)
+            throw new IllegalArgumentException("The number of lines must be positive");
+        startSearch(budget == null ? Long.MAX_VALUE : System.nanoTime() + budget.toNanos());
+
+        int width = board.getWidth();
+        int[] columns = new int[width];
+        int count = 0;
+        if (!board.isGameOver())
+            for (int col : centerOrder)
+                if (board.getColumnHeight(col) < board.getHeight())
+                    columns[count++] = col;
+
+        int[] scores = new int[width];
+        int[][] variations = new int[width][];
+        // whether the score of each move is exact rather than an upper bound
+        boolean[] exact = new boolean[width];
+        Analysis completed = new Analysis(0, List.of());
+
+        for (int depth = 1; depth <= Math.min(maxDepth, board.getFreeSpaces()) && count > 0; depth++) {
+            // the window of the root: only moves scoring more than the worst of the best lines so far matter
+            int[] best = new int[lines];
+            Arrays.fill(best, -1000);
+
+            searchDepth = depth;
+            for (int i = 0; i < count; i++) {
+                int col = columns[i];
+                int mirror = board.mirror(col);
+                if (rootSymmetric && col > mirror && board.getColumnHeight(mirror) < board.getHeight())
+                    continue;
+
+                int alpha = lines >= count ? -1000 : best[lines - 1];
+                board.move(col);
+                board.swapPlayer();
+                int score = usePrincipalVariation ? -principalVariation(depth - 1, -1000, -alpha)
+                                                  : minimax(depth - 1, alpha, 1000);
+                variations[col] = aborted ? null : variation(col, depth);
+                board.swapPlayer();
+                board.unmove(col);
+
+                if (aborted)
+                    break;
+
+                scores[col] = score;
+                exact[col] = alpha == -1000 || score > alpha;
+                insert(best, score);
+            }
+            if (aborted)
+                break;
+
+            if (rootSymmetric)
+                for (int i = 0; i < count; i++) {
+                    int col = columns[i];
+                    int mirror = board.mirror(col);
+                    if (col > mirror && board.getColumnHeight(mirror) < board.getHeight()) {
+                        scores[col] = scores[mirror];
+                        exact[col] = exact[mirror];
+                        variations[col] = mirror(variations[mirror]);
                     }
                 }
+
+            // the next depth tries the best moves first
+            sortByScore(columns, count, scores, exact);
+            List<Analysis.Line> result = new ArrayList<>();
+            for (int i = 0; i < count && result.size() < lines; i++)
+                if (exact[columns[i]])
+                    result.add(new Analysis.Line(columns[i], scores[columns[i]], variations[columns[i]]));
+            completed = new Analysis(depth, List.copyOf(result));
+
+            if (listener != null)
+                listener.accept(completed);
+            if (budget != null && System.nanoTime() >= deadline)
+                break;
+        }
+
+        Analysis.Line best = completed.best();
+        finishSearch(best == null ? -1 : best.column(), best == null ? 0 : best.score(), completed.depth());
+        return completed;
+    }
+
+
+    /**
+     * Keeps the best scores of the root in descending order, dropping the lowest one
+     * @param best the best scores so far
+     * @param score the score of another move
+     */
+    private static void insert(int[] best, int score) {
+        int i = best.length - 1;
+        if (score <= best[i])
+            return;
+        while (i > 0 && best[i - 1] < score) {
+            best[i] = best[i - 1];
+            i--;
+        }
+        best[i] = score;
+    }
+
+
+    /**
+     * Sorts columns by their scores, best first. Among columns with equal scores, exact scores come before upper
+     * bounds, and otherwise the columns keep their order.
+     * @param columns the columns
+     * @param count how many of the columns to sort
+     * @param scores the score of each column
+     * @param exact whether the score of each column is exact
+     */
+    private static void sortByScore(int[] columns, int count, int[] scores, boolean[] exact) {
+        for (int i = 1; i < count; i++) {
+            int col = columns[i];
+            int j = i;
+            while (j > 0 && (scores[columns[j - 1]] < scores[col]
+                             || scores[columns[j - 1]] == scores[col] && exact[col] && !exact[columns[j - 1]])) {
+                columns[j] = columns[j - 1];
+                j--;
+            }
+            columns[j] = col;
+        }
+    }
+
+
+    /**
+     * Follows the best moves stored in the transposition table from the board after a move at the root
+     * @param column index of the column of the move at the root, which has already been played
+     * @param depth the depth the move was searched to
+     * @return the move at the root followed by the best replies, at most <code>depth</code> moves
+     */
+    private int[] variation(int column, int depth) {
+        int[] moves = new int[depth];
+        moves[0] = column;
+        int length = 1;
+
+        while (length < depth && !board.isGameOver()) {
+            long entry = table.probe(tableKey(board, player));
+            int move = entry == 0 ? -1 : orient(board, TranspositionTable.move(entry));
+            if (move < 0 || !board.move(move))
+                break;
+            board.swapPlayer();
+            moves[length++] = move;
+        }
+
+        for (int i = length - 1; i > 0; i--) {
+            board.swapPlayer();
+            board.unmove(moves[i]);
+        }
+        return Arrays.copyOf(moves, length);
+    }
+
+
+    /**
+     * @param moves a sequence of moves
+     * @return the sequence of the mirror images of the moves
+     */
+    private int[] mirror(int[] moves) {
+        int[] mirrored = new int[moves.length];
+        for (int i = 0; i < moves.length; i++)
+            mirrored[i] = board.mirror(moves[i]);
+        return mirrored;
+    }
+
+
+    /**
+     * Searches the root with a window of <code>ASPIRATION_WINDOW</code> on each side of the expected score, which is
+     * cheaper than the full window when the score barely changes between iterations which end on the same player. If
+     * the score falls outside the window, the search is repeated with the window opened up on that side.
+     * @param expected the score the iteration is expected to find
+     * @return the score of the root, meaningless if the search is aborted
+     */
+    private int aspirationSearch(int expected) {
+        int alpha = Math.max(-1000, expected - ASPIRATION_WINDOW);
+        int beta = Math.min(1000, expected + ASPIRATION_WINDOW);
+
+        while (true) {
+            int score = principalVariation(searchDepth, alpha, beta);
+            if (aborted)
+                return 0;
+
+            if (score <= alpha && alpha > -1000)
+                alpha = -1000;
+            else if (score >= beta && beta < 1000)
+                beta = 1000;
+            else
+                return score;
+        }
+    }
+
+
+    /**
+     * Implements the principal variation search, a negamax version of <code>minimax</code>: every score is from the
+     * point of view of the player to move, so there is a single branch for both players. The first move, which the
+     * move ordering expects to be the best, is searched with the full window. Every other move is searched with a
+     * null window, which only tells whether it is better than the best move so far, and only a move which is better
+     * is searched again with the full window. The leaves and the transposition table use the scores of
+     * <code>minimax</code>, from the point of view of the player the computer searches for, so both searches find
+     * the same score.
+     * @param depth how many more recursive steps we can perform before calculating the heuristic
+     * @param alpha the score the player to move can already achieve
+     * @param beta the score the opponent of the player to move can already hold it to
+     * @return the score of the board from the point of view of the player to move
+     */
+    private int principalVariation(int depth, int alpha, int beta) {
+        if ((++nodes & 1023) == 0 && (System.nanoTime() >= deadline || stopped))
+            aborted = true;
+
+        if (aborted)
+            return 0;
+
+        if (board.getWinner() != 0)
+            return board.getWinner() == board.getPlayer() ? 1000 : -1000;
+
+        if (board.getFreeSpaces() == 0)
+            return 0;
+
+        // converts between the point of view of the player to move and that of the computer
+        int sign = board.getPlayer() == player ? 1 : -1;
+
+        if (depth == 0) {
+            leafEvaluations++;
+            return sign * getScore();
+        }
+
+
+        long hash = tableKey(board, player);
+        long entry = table.probe(hash);
+        int tableMove = -1;
+
+        if (entry != 0) {
+            tableHits++;
+            tableMove = orient(board, TranspositionTable.move(entry));
+
+            // the root is always searched, so that the best move gets set
+            if (depth != searchDepth && TranspositionTable.depth(entry) >= depth) {
+                int score = sign * TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT)
+                    return score;
+                if (bound == (sign > 0 ? TranspositionTable.LOWER_BOUND : TranspositionTable.UPPER_BOUND))
+                    alpha = Math.max(alpha, score);
+                else
+                    beta = Math.min(beta, score);
+                if (alpha >= beta)
+                    return score;
+            }
+        }
+
+        if (depth == searchDepth && previousBestMove >= 0)
+            tableMove = previousBestMove;
+        else if (!useTableMove)
+            tableMove = -1;
+
+        int originalAlpha = alpha;
+        int bestValue = Integer.MIN_VALUE;
+        int bestColumn = -1;
+        boolean first = true;
+
+        int ply = rootFreeSpaces - board.getFreeSpaces();
+        int[] moves = moveBuffers[ply];
+        int count = orderMoves(ply, tableMove, moves);
+
+        for (int i = 0; i < count; i++) {
+            int col = moves[i];
+
+            // the mirror image of a move in the left half of a symmetric board is just as good
+            if (depth == searchDepth && rootSymmetric && col > board.mirror(col))
+                continue;
+
+            if (!board.move(col))
+                continue;
+            board.swapPlayer();
+            int value;
+            if (first) {
+                value = -principalVariation(depth - 1, -beta, -alpha);
+            } else {
+                value = -principalVariation(depth - 1, -alpha - 1, -alpha);
+                if (value > alpha && value < beta)
+                    value = -principalVariation(depth - 1, -beta, -alpha);
+            }
+            board.swapPlayer();
+            board.unmove(col);
+            first = false;
+
+            if (aborted)
+                return 0;
+
+            if (value > bestValue) {
+                bestValue = value;
+                bestColumn = col;
+                if (depth == searchDepth)
+                    bestMove = col;
+
+                if (value >= beta) {
+                    betaCutoffs++;
+                    if (i == 0)
+                        firstMoveCutoffs++;
+                    recordCutoff(ply, depth, col);
+                    break;
+                }
+
+                alpha = Math.max(alpha, value);
             }
         }
+
+        // the bounds are stored from the point of view of the computer, like minimax stores them
+        int upper = sign > 0 ? TranspositionTable.UPPER_BOUND : TranspositionTable.LOWER_BOUND;
+        int lower = sign > 0 ? TranspositionTable.LOWER_BOUND : TranspositionTable.UPPER_BOUND;
+        int bound = bestValue <= originalAlpha ? upper : bestValue >= beta ? lower : TranspositionTable.EXACT;
+        table.store(hash, sign * bestValue, depth, bound, orient(board, bestColumn));
+
         return bestValue;
     }
 
 
+    /**
+     * Lists the legal moves of the current board in the order they should be searched: the move from the
+     * transposition table first, then the killer moves, then the rest by their history score. Ties keep the static
+     * order, which goes from the center outwards or from left to right. Each heuristic is only used if it is enabled.
+     * @param ply the number of moves between the root and the current board
+     * @param tableMove the move to try first, or -1 if there is none
+     * @param moves array which receives the columns, in order
+     * @return the number of legal moves
+     */
+    private int orderMoves(int ply, int tableMove, int[] moves) {
+        int[] keys = keyBuffers[ply];
+        int[] killers = killerMoves[ply];
+        int[] scores = history[board.getPlayer()];
+        int count = 0;
+
+        for (int i = 0; i < board.getWidth(); i++) {
+            int col = useCenterFirst ? centerOrder[i] : i;
+            if (board.getColumnHeight(col) == board.getHeight())
+                continue;
+
+            int key = 0;
+            if (col == tableMove)
+                key = 1 << 30;
+            else if (useKillerMoves && col == killers[0])
+                key = (1 << 29) + 1;
+            else if (useKillerMoves && col == killers[1])
+                key = 1 << 29;
+            else if (useHistory)
+                key = scores[col];
+
+            // insertion sort, which keeps the static order for equal keys
+            int j = count++;
+            while (j > 0 && keys[j - 1] < key) {
+                moves[j] = moves[j - 1];
+                keys[j] = keys[j - 1];
+                j--;
+            }
+            moves[j] = col;
+            keys[j] = key;
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Remembers a move which caused a cutoff, as a killer move for its depth in the tree and in the history table
+     * @param ply the number of moves between the root and the board where the cutoff happened
+     * @param depth how many more moves were to be searched from that board
+     * @param column index of the column of the move
+     */
+    private void recordCutoff(int ply, int depth, int column) {
+        int[] killers = killerMoves[ply];
+        if (killers[0] != column) {
+            killers[1] = killers[0];
+            killers[0] = column;
+        }
+
+        int[] scores = history[board.getPlayer()];
+        scores[column] += depth * depth;
+
+        // keep the history scores below the keys of the killer moves
+        if (scores[column] >= 1 << 28)
+            for (int[] playerScores : history)
+                for (int col = 0; col < playerScores.length; col++)
+                    playerScores[col] /= 2;
+    }
+
+
     /**
      * Calls the minimax algorithm to compute the best possible move for the current board
      * @return index of the column of the best move
      */
     public int getMove() {
-        minimax(1, -1000, 1000);
-        return bestMove;
+        return getMove(1);
+    }
+
+
+    /**
+     * Calls the minimax algorithm with the given depth to compute the best possible move for the current board
+     * @param depth how many moves ahead to search
+     * @return index of the column of the best move
+     */
+    public int getMove(int depth) {
+        return search(depth).move();
+    }
+
+
+    /**
+     * Calls the minimax algorithm with the given depth to compute the best possible move for the current board
+     * @param depth how many moves ahead to search
+     * @return the best move, its score and the statistics of the search
+     */
+    public SearchResult search(int depth) {
+        startSearch(Long.MAX_VALUE);
+        SearchResult known = lookUp();
+        if (known != null)
+            return known;
+
+        searchDepth = depth;
+        int score = usePrincipalVariation ? principalVariation(searchDepth, -1000, 1000)
+                                          : minimax(searchDepth, -1000, 1000);
+        return finishSearch(bestMove, score, depth);
+    }
+
+
+    /**
+     * Computes the best possible move for the current board using iterative deepening: the minimax algorithm is
+     * called with depth 1, 2, 3, ... until the time budget runs out or the whole game has been searched. Each
+     * iteration tries the best move of the previous one first. An iteration which is cut short by the deadline is
+     * discarded, and the best move of the last completed iteration is returned.
+     * @param budget how long the search may take
+     * @return index of the column of the best move
+     */
+    public int getMove(Duration budget) {
+        return getMove(Integer.MAX_VALUE, budget);
+    }
+
+
+    /**
+     * Computes the best possible move for the current board using iterative deepening, which stops at
+     * <code>maxDepth</code> or when the time budget runs out, whichever comes first
+     * @param maxDepth the greatest depth to search to
+     * @param budget how long the search may take
+     * @return index of the column of the best move
+     */
+    public int getMove(int maxDepth, Duration budget) {
+        return search(maxDepth, budget).move();
+    }
+
+
+    /**
+     * Computes the best possible move for the current board using iterative deepening, which stops at
+     * <code>maxDepth</code> or when the time budget runs out, whichever comes first
+     * @param maxDepth the greatest depth to search to
+     * @param budget how long the search may take
+     * @return the best move of the last completed iteration, its score and the statistics of the search
+     */
+    public SearchResult search(int maxDepth, Duration budget) {
+        startSearch(System.nanoTime() + budget.toNanos());
+        SearchResult known = lookUp();
+        if (known != null)
+            return known;
+
+        int completedScore = 0;
+        int completedDepth = 0;
+
+        // the heuristic favours the player who moved last, so the score of an iteration is closest to the score of
+        // the iteration before the previous one, which ended on the same player
+        int scoreBeforePrevious = 0;
+
+        // if not even the first iteration completes, play any legal move
+        int completedBestMove = bestMove;
+        for (int col = 0; col < board.getWidth(); col++)
+            if (board.getColumnHeight(col) < board.getHeight()) {
+                completedBestMove = col;
+                break;
+            }
+
+        for (int depth = 1; depth <= Math.min(maxDepth, board.getFreeSpaces()); depth++) {
+            searchDepth = depth;
+            int score = !usePrincipalVariation ? minimax(searchDepth, -1000, 1000)
+                      : depth > 2 ? aspirationSearch(scoreBeforePrevious)
+                      : principalVariation(searchDepth, -1000, 1000);
+            if (aborted)
+                break;
+
+            completedBestMove = bestMove;
+            scoreBeforePrevious = completedScore;
+            completedScore = score;
+            completedDepth = depth;
+            previousBestMove = bestMove;
+
+            // the outcome of the game is already known
+            if (Math.abs(score) == 1000 || System.nanoTime() >= deadline)
+                break;
+        }
+
+        return finishSearch(completedBestMove, completedScore, completedDepth);
+    }
+
+
+    /**
+     * Looks up the current board in the database of precomputed moves
+     * @return the stored move and score, or null if the board is not in the database
+     */
+    private SearchResult lookUp() {
+        if (database == null || board.isGameOver())
+            return null;
+
+        int index = database.find(board.getCanonicalHash());
+        if (index < 0 || database.getMove(index) < 0)
+            return null;
+        return finishSearch(orient(board, database.getMove(index)), database.getScore(index), database.getDepth(index));
+    }
+
+
+    /**
+     * Searches a board on behalf of another search, which has already made the moves leading to it. The killer moves
+     * and history scores learned by earlier calls are kept, so that all the boards searched for one outer search share
+     * their move ordering; <code>resetOrdering</code> forgets them. The transposition table is not told that a new
+     * search has started.
+     * @param board the board to search, which this player searches from now on, with the dimensions of the board the
+     * player was created with
+     * @param player the player the outer search is searching for
+     * @param depth how many moves ahead to search
+     * @param alpha the best score the maximizing player can definitely achieve
+     * @param beta the best score the minimizing player can definitely achieve
+     * @param deadline System.nanoTime() after which the search must stop
+     * @return the score of the board from the point of view of <code>player</code>, meaningless if
+     * <code>isAborted</code> returns true
+     */
+    int search(Model board, int player, int depth, int alpha, int beta, long deadline) {
+        this.board = board;
+        this.player = player;
+        this.previousBestMove = -1;
+        this.deadline = deadline;
+        this.aborted = false;
+        resetCounters();
+
+        // no depth is the root, so table cutoffs are allowed everywhere
+        searchDepth = -1;
+        rootSymmetric = false;
+        return minimax(depth, alpha, beta);
+    }
+
+
+    /**
+     * @return true if the last search was stopped by its deadline or by <code>stop</code>
+     */
+    boolean isAborted() { return aborted; }
+
+
+    /**
+     * Makes the current search, and every later search of this player, stop as soon as possible. Can be called from
+     * any thread. A search which is stopped returns the best move of its last completed iteration, if any.
+     */
+    public void stop() { stopped = true; }
+
+
+    /**
+     * Resets the state of the search before computing a new move
+     * @param deadline System.nanoTime() after which the search must stop
+     */
+    private void startSearch(long deadline) {
+        player = board.getPlayer();
+        rootSymmetric = board.isSymmetric();
+        previousBestMove = -1;
+        this.deadline = deadline;
+        aborted = false;
+        resetCounters();
+        resetOrdering();
+        if (agesTable)
+            table.newSearch();
+    }
+
+
+    /**
+     * Records the statistics of the search which has just finished, in <code>lastStats</code>, in the metrics if there
+     * are any, and as a Flight Recorder event
+     * @param move the best move found
+     * @param score the score of the best move
+     * @param depthReached the depth of the last completed iteration
+     * @return the result of the search
+     */
+    private SearchResult finishSearch(int move, int score, int depthReached) {
+        long elapsed = System.nanoTime() - startTime;
+        lastStats = getStats(depthReached, elapsed);
+
+        if (metrics != null)
+            metrics.record(lastStats);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.move = move;
+            event.depthReached = depthReached;
+            event.nodes = nodes;
+            event.leafEvaluations = leafEvaluations;
+            event.betaCutoffs = betaCutoffs;
+            event.firstMoveCutoffs = firstMoveCutoffs;
+            event.tableHits = tableHits;
+            event.commit();
+        }
+
+        return new SearchResult(move, score, lastStats);
+    }
+
+
+    /**
+     * @param depthReached the depth of the last completed iteration
+     * @param elapsed how long the search took, in nanoseconds
+     * @return the counters of the current search
+     */
+    SearchStats getStats(int depthReached, long elapsed) {
+        return new SearchStats(nodes, leafEvaluations, betaCutoffs, firstMoveCutoffs, tableHits, depthReached,
+                               Duration.ofNanos(elapsed));
+    }
+
+
+    /**
+     * Sets all the counters of the search to 0 and starts the clock
+     */
+    private void resetCounters() {
+        nodes = 0;
+        leafEvaluations = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        tableHits = 0;
+        startTime = System.nanoTime();
+        event = new SearchEvent();
+        event.begin();
+    }
+
+
+    /**
+     * Forgets the killer moves and history scores of the previous search
+     */
+    private void resetOrdering() { resetOrdering(board.getFreeSpaces()); }
+
+
+    /**
+     * Forgets the killer moves and history scores of the previous search, before the boards of a new outer search are
+     * searched with <code>search(Model, int, int, int, int, long)</code>
+     * @param rootFreeSpaces the number of free spaces at the root of the outer search, from which the moves of the
+     * boards are counted
+     */
+    void resetOrdering(int rootFreeSpaces) {
+        this.rootFreeSpaces = rootFreeSpaces;
+        for (int[] killers : killerMoves)
+            Arrays.fill(killers, -1);
+        for (int[] scores : history)
+            Arrays.fill(scores, 0);
     }
 }
@@ -0,0 +1,218 @@
+package Connect4;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+
+/**
+ * The <code>Engine</code> class computes best moves for many games at once. It keeps no state about any one game:
+ * each call gets the board as a <code>BoardSnapshot</code>, so one engine can be called from any number of threads
+ * at the same time. All searches share one transposition table.
+ * Each search needs a board to move chips around in and a <code>ComputerPlayer</code> with its own search state. These
+ * are borrowed from a lock-free pool and returned when the search is done, so in the steady state a call allocates
+ * nothing.
+ * The searches do not age the shared table themselves, since each one would make the entries of all the others look
+ * old; instead the table starts a new generation once per epoch, so entries stored during the last second are kept
+ * over shallower ones.
+ */
+public class Engine {
+
+    // Fields
+
+    private final int columns;
+    private final int rows;
+
+    private final TranspositionTable table;
+
+    // How long the table keeps one generation, in nanoseconds
+    static final long EPOCH_NANOS = 1_000_000_000L;
+
+    // System.nanoTime() when the current generation of the table started
+    private final AtomicLong epochStart = new AtomicLong(System.nanoTime());
+
+    // The statistics of all the searches
+    private final EngineMetrics metrics = new EngineMetrics();
+
+    // Precomputed moves looked up before searching, null if there are none
+    private volatile PositionDatabase database;
+
+    // Results of earlier searches looked up before searching, null if there is none
+    private volatile MoveCache moveCache;
+
+    // Idle players, each one searching on its own board. Empty slots are null.
+    private final AtomicReferenceArray<ComputerPlayer> pool;
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * @param columns number of columns of the boards the engine plays on
+     * @param rows number of rows of the boards the engine plays on
+     * @param tableSizeInMegabytes the memory the shared transposition table may use, in MB
+     */
+    public Engine(int columns, int rows, int tableSizeInMegabytes) {
+        this.columns = columns;
+        this.rows = rows;
+        this.table = new TranspositionTable(tableSizeInMegabytes);
+        this.pool = new AtomicReferenceArray<>(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+
+    // Getters
+
+    /**
+     * @return the transposition table shared by all the searches
+     */
+    public TranspositionTable getTranspositionTable() { return table; }
+
+    /**
+     * @return the statistics of all the searches, which can be registered with JMX
+     */
+    public EngineMetrics getMetrics() { return metrics; }
+
+    /**
+     * @param database the precomputed moves to look up before searching, or null to always search
+     * @throws IllegalArgumentException if the database is keyed by bitboards or is for a board with different
+     * dimensions
+     */
+    public void setDatabase(PositionDatabase database) {
+        if (database != null && database.getKeyType() != PositionDatabase.KEY_ZOBRIST)
+            throw new IllegalArgumentException("The database is not keyed by the hash of the boards");
+        if (database != null && (database.getColumns() != columns || database.getRows() != rows))
+            throw new IllegalArgumentException("The database is for a " + database.getColumns() + "x" +
+                                               database.getRows() + " board");
+        this.database = database;
+    }
+
+
+    /**
+     * @param moveCache the cache of results to look up before searching and to store every result in, which may be
+     * shared with other engines for boards of the same dimensions, or null to always search
+     */
+    public void setMoveCache(MoveCache moveCache) { this.moveCache = moveCache; }
+
+    /**
+     * @return the cache of results, or null if there is none
+     */
+    public MoveCache getMoveCache() { return moveCache; }
+
+
+    // Searching
+
+    /**
+     * Computes the best move for the given board. Safe to call from several threads at once.
+     * @param position the board to search
+     * @param limits how far the search may go
+     * @return index of the column of the best move
+     * @throws IllegalArgumentException if the board does not have the dimensions the engine was created for
+     */
+    public int bestMove(BoardSnapshot position, SearchLimits limits) {
+        return search(position, limits).move();
+    }
+
+
+    /**
+     * Computes the best move for the given board, along with its score and the statistics of the search. Safe to
+     * call from several threads at once.
+     * @param position the board to search
+     * @param limits how far the search may go
+     * @return the result of the search
+     * @throws IllegalArgumentException if the board does not have the dimensions the engine was created for
+     */
+    public SearchResult search(BoardSnapshot position, SearchLimits limits) {
+        ageTable();
+        ComputerPlayer player = borrow();
+        try {
+            player.setDatabase(database);
+            player.getBoard().load(position);
+            MoveCache cache = moveCache;
+            if (cache == null)
+                return search(player, limits);
+            return cache.get(player.getBoard(), limits, () -> search(player, limits));
+        } finally {
+            release(player);
+        }
+    }
+
+
+    /**
+     * @param player a player, whose board has been loaded
+     * @param limits how far the search may go
+     * @return the result of the search
+     */
+    private static SearchResult search(ComputerPlayer player, SearchLimits limits) {
+        if (limits.budget() == null)
+            return player.search(limits.depth());
+        return player.search(limits.depth(), limits.budget());
+    }
+
+
+    /**
+     * Computes the scores and principal variations of the best moves of the given board in a single search, as
+     * <code>ComputerPlayer.analyze</code> does. Safe to call from several threads at once.
+     * @param position the board to analyze
+     * @param limits how far the search may go
+     * @param lines how many of the best moves to return
+     * @param listener called with the analysis of each depth as soon as it is completed, or null
+     * @return the analysis of the last completed depth
+     * @throws IllegalArgumentException if the board does not have the dimensions the engine was created for, or if
+     * <code>lines</code> is not positive
+     */
+    public Analysis analyze(BoardSnapshot position, SearchLimits limits, int lines, Consumer<Analysis> listener) {
+        ageTable();
+        ComputerPlayer player = borrow();
+        try {
+            player.getBoard().load(position);
+            return player.analyze(limits.depth(), limits.budget(), lines, listener);
+        } finally {
+            release(player);
+        }
+    }
+
+
+    /**
+     * Starts a new generation of the table if the current one is older than an epoch. Only one of the threads which
+     * see the epoch end starts the new generation.
+     */
+    private void ageTable() {
+        long now = System.nanoTime();
+        long start = epochStart.get();
+        if (now - start >= EPOCH_NANOS && epochStart.compareAndSet(start, now))
+            table.newSearch();
+    }
+
+
+    /**
+     * Takes an idle player out of the pool, or creates a new one if the pool is empty
+     * @return a player which is not used by any other thread
+     */
+    private ComputerPlayer borrow() {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i < pool.length(); i++) {
+            int slot = Math.floorMod(start + i, pool.length());
+            ComputerPlayer player = pool.get(slot);
+            if (player != null && pool.compareAndSet(slot, player, null))
+                return player;
+        }
+        ComputerPlayer player = new ComputerPlayer(new Model(columns, rows, true, 1), table);
+        player.setMetrics(metrics);
+        player.setAgesTable(false);
+        return player;
+    }
+
+
+    /**
+     * Puts a player back into the pool. If the pool is full, the player is dropped.
+     * @param player the player to return
+     */
+    private void release(ComputerPlayer player) {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i < pool.length(); i++) {
+            int slot = Math.floorMod(start + i, pool.length());
+            if (pool.get(slot) == null && pool.compareAndSet(slot, null, player))
+                return;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package Connect4;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The <code>EngineMetrics</code> class adds up the <code>SearchStats</code> of many searches, possibly running on many
+ * threads at once, and exposes the totals and the latency percentiles over JMX.
+ * The searches count on plain per-search counters and only add their totals here when they finish, so recording a
+ * search costs a few <code>LongAdder</code> additions and one histogram update.
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+
+    // Fields
+
+    // Each power of 2 of the latency in microseconds is split into this many buckets
+    private static final int SUB_BUCKETS = 8;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder leafEvaluations = new LongAdder();
+    private final LongAdder betaCutoffs = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    // Number of searches per latency bucket, see bucket()
+    private final AtomicLongArray latencies = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+
+
+    // Recording
+
+    /**
+     * Adds the statistics of a finished search to the totals
+     * @param stats the statistics of the search
+     */
+    public void record(SearchStats stats) {
+        searches.increment();
+        nodes.add(stats.nodes());
+        leafEvaluations.add(stats.leafEvaluations());
+        betaCutoffs.add(stats.betaCutoffs());
+        tableHits.add(stats.tableHits());
+        nanos.add(stats.elapsed().toNanos());
+        latencies.incrementAndGet(bucket(stats.elapsed().toNanos() / 1000));
+    }
+
+
+    /**
+     * Registers these metrics with the platform MBean server, under the name
+     * <code>Connect4:type=EngineMetrics,name=&lt;name&gt;</code>
+     * @param name the name which tells these metrics apart from the metrics of other engines
+     * @throws JMException if the metrics cannot be registered
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("Connect4:type=EngineMetrics,name=" + ObjectName.quote(name)));
+    }
+
+
+    // Getters
+
+    @Override
+    public long getSearches() { return searches.sum(); }
+
+    @Override
+    public long getNodes() { return nodes.sum(); }
+
+    @Override
+    public long getLeafEvaluations() { return leafEvaluations.sum(); }
+
+    @Override
+    public long getBetaCutoffs() { return betaCutoffs.sum(); }
+
+    @Override
+    public long getTableHits() { return tableHits.sum(); }
+
+    @Override
+    public double getNodesPerSecond() {
+        long time = nanos.sum();
+        return time == 0 ? 0 : nodes.sum() * 1e9 / time;
+    }
+
+    @Override
+    public double getLatencyP50Millis() { return getLatencyPercentile(0.5) / 1000.0; }
+
+    @Override
+    public double getLatencyP99Millis() { return getLatencyPercentile(0.99) / 1000.0; }
+
+
+    /**
+     * @param fraction the percentile as a fraction, for example 0.99
+     * @return the latency below which the given fraction of the searches finished, in microseconds, accurate to
+     * within 1/8 of its value
+     */
+    public long getLatencyPercentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < latencies.length(); i++)
+            total += latencies.get(i);
+        if (total == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < latencies.length(); i++) {
+            seen += latencies.get(i);
+            if (seen >= target)
+                return bucketUpperBound(i);
+        }
+        return bucketUpperBound(latencies.length() - 1);
+    }
+
+
+    @Override
+    public void reset() {
+        searches.reset();
+        nodes.reset();
+        leafEvaluations.reset();
+        betaCutoffs.reset();
+        tableHits.reset();
+        nanos.reset();
+        for (int i = 0; i < latencies.length(); i++)
+            latencies.set(i, 0);
+    }
+
+
+    // Latency buckets
+
+    /**
+     * Latencies below <code>SUB_BUCKETS</code> microseconds each get their own bucket, and every power of 2 above that
+     * is split into <code>SUB_BUCKETS</code> buckets of equal width
+     * @param micros a latency in microseconds
+     * @return the index of the bucket which counts the latency
+     */
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) Math.max(micros, 0);
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+
+    /**
+     * @param bucket the index of a bucket
+     * @return the largest latency counted by the bucket, in microseconds
+     */
+    private static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + 2;
+        int sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1L) << (exponent - 3)) - 1;
+    }
+}
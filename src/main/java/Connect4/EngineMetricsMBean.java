@@ -0,0 +1,53 @@
+package Connect4;
+
+
+/**
+ * The <code>EngineMetricsMBean</code> interface is the JMX management interface of <code>EngineMetrics</code>.
+ */
+public interface EngineMetricsMBean {
+
+    /**
+     * @return the number of searches recorded
+     */
+    long getSearches();
+
+    /**
+     * @return the total number of boards visited
+     */
+    long getNodes();
+
+    /**
+     * @return the total number of boards scored with the heuristic
+     */
+    long getLeafEvaluations();
+
+    /**
+     * @return the total number of beta cutoffs
+     */
+    long getBetaCutoffs();
+
+    /**
+     * @return the total number of boards found in the transposition table
+     */
+    long getTableHits();
+
+    /**
+     * @return the total number of boards visited divided by the total time spent searching
+     */
+    double getNodesPerSecond();
+
+    /**
+     * @return the median latency of a search, in milliseconds
+     */
+    double getLatencyP50Millis();
+
+    /**
+     * @return the 99th percentile latency of a search, in milliseconds
+     */
+    double getLatencyP99Millis();
+
+    /**
+     * Resets all the counters
+     */
+    void reset();
+}
@@ -0,0 +1,15 @@
+package Connect4;
+
+
+/**
+ * The <code>Evaluation</code> enum lists the heuristic evaluations <code>ComputerPlayer</code> can score the leaves of
+ * its search with, set with <code>ComputerPlayer.setEvaluation</code>.
+ */
+public enum Evaluation {
+    // The sum of the scores of all 4-cell windows, kept up to date by the Model
+    WINDOWS,
+
+    // The window score plus the threats of both players: the empty cells which would complete four in a row, scored
+    // by whether they can be played at once and whether their row suits the player who owns them
+    THREATS
+}
@@ -0,0 +1,471 @@
+package Connect4;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * The <code>GameJournal</code> class records the moves of many games in an append-only file, so that the games can be
+ * recovered after the process stops and analyzed offline.
+ *
+ * The file starts with an 8-byte header:
+ *      - int  -> magic number, "C4GJ"
+ *      - byte -> format version
+ *      - byte -> number of columns of the boards
+ *      - byte -> number of rows of the boards
+ *      - byte -> unused
+ * followed by records of 9 bytes: the <code>long</code> id of a game session, and a byte which is either the index of
+ * the column played in the session, <code>NEW_GAME</code> when the session starts a game on an empty board with
+ * Player 1 to move, or <code>END_SESSION</code> when the session is over. Session ids are positive.
+ *
+ * A crash can leave a partly written last record, which is cut off, or whole records of zeros before the end of the
+ * file, when the file system recorded its new length but not the data of the last batch. A record of zeros would
+ * replay as column 0 of session 0, which is why 0 is not a session id: such records are skipped when reading.
+ *
+ * Records are appended to a buffer, which a background thread writes to the file and forces to disk. Records
+ * appended while a batch is being written wait in a second buffer and go into the next batch, so under load a single
+ * <code>fsync</code> covers the records of many sessions. <code>append</code> only waits when both buffers are full,
+ * and <code>sync</code> waits until every record appended before it is on disk.
+ */
+public class GameJournal implements Closeable {
+
+    // Fields
+
+    static final int MAGIC = 0x43344A47;
+    static final byte VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int RECORD_BYTES = 9;
+
+    // The markers which can be recorded instead of a column
+    public static final int NEW_GAME = -1;
+    public static final int END_SESSION = -2;
+
+    // Size of each of the two buffers, in bytes
+    private static final int BUFFER_BYTES = RECORD_BYTES * 8192;
+
+    // Size of the buffer of the sequential reader, in bytes
+    private static final int READ_BUFFER_BYTES = RECORD_BYTES * 131072;
+
+    private final FileChannel channel;
+
+    private final int columns;
+    private final int rows;
+
+    // How long the writing thread waits for more records before writing a batch
+    private final Duration commitDelay;
+
+    // The buffer records are appended to, and the other buffer, or null while it is being written
+    private ByteBuffer current = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    // The number of records appended, and the number of them which are on disk
+    private long appended;
+    private long durable;
+
+    private boolean closed;
+
+    // The error which stopped the writing thread, if any
+    private IOException failure;
+
+    private final Thread committer;
+
+
+    /**
+     * Receives the records of a journal, in the order they were appended
+     */
+    public interface Visitor {
+
+        /**
+         * @param session the id of the game session
+         * @param column index of the column played, <code>NEW_GAME</code> or <code>END_SESSION</code>
+         */
+        void record(long session, int column);
+    }
+
+
+    /**
+     * The games recovered from a journal
+     * @param columns number of columns of the boards
+     * @param rows number of rows of the boards
+     * @param sessions the board of every session which has not ended, by session id
+     * @param lastSession the greatest session id in the journal, 0 if there is none
+     */
+    public record Recovery(int columns, int rows, Map<Long, Model> sessions, long lastSession) {}
+
+
+    // Constructors
+
+    /**
+     * Private constructor, journals are created with <code>open</code>
+     * @param channel the file, positioned at its end
+     * @param columns number of columns of the boards
+     * @param rows number of rows of the boards
+     * @param commitDelay how long to wait for more records before writing a batch
+     */
+    private GameJournal(FileChannel channel, int columns, int rows, Duration commitDelay) {
+        this.channel = channel;
+        this.columns = columns;
+        this.rows = rows;
+        this.commitDelay = commitDelay;
+
+        this.committer = new Thread(this::commit, "game-journal");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+
+    /**
+     * Opens a journal to append to, creating it if it does not exist. If the last record of an existing journal was
+     * only partly written when the process stopped, it is cut off.
+     * @param path the path of the file
+     * @param columns number of columns of the boards
+     * @param rows number of rows of the boards
+     * @param commitDelay how long to wait for more records before writing a batch, zero to write as soon as possible
+     * @return the journal
+     * @throws IOException if the file cannot be opened, or is not a journal for boards of these dimensions
+     */
+    public static GameJournal open(Path path, int columns, int rows, Duration commitDelay) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).put(VERSION).put((byte) columns).put((byte) rows).put((byte) 0).flip();
+                channel.truncate(0);
+                channel.write(header, 0);
+                channel.force(true);
+            } else {
+                int[] dimensions = readHeader(channel, path);
+                if (dimensions[0] != columns || dimensions[1] != rows)
+                    throw new IOException(path + " is a journal of " + dimensions[0] + "x" + dimensions[1] +
+                                          " games");
+
+                long records = (channel.size() - HEADER_BYTES) / RECORD_BYTES;
+                channel.truncate(HEADER_BYTES + records * RECORD_BYTES);
+            }
+            channel.position(channel.size());
+            return new GameJournal(channel, columns, rows, commitDelay);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    // Getters
+
+    /**
+     * @return number of columns of the boards
+     */
+    public int getColumns() { return columns; }
+
+    /**
+     * @return number of rows of the boards
+     */
+    public int getRows() { return rows; }
+
+
+    // Writing
+
+    /**
+     * Appends a record. The record is written to disk shortly after, together with the records appended at about the
+     * same time; call <code>sync</code> to wait for it.
+     * @param session the id of the game session, positive
+     * @param column index of the column played, <code>NEW_GAME</code> or <code>END_SESSION</code>
+     * @throws IOException if the journal has failed to write earlier records
+     * @throws IllegalStateException if the journal is closed
+     */
+    public synchronized void append(long session, int column) throws IOException {
+        if (session <= 0)
+            throw new IllegalArgumentException("Invalid session: " + session);
+        if (column < END_SESSION || column >= columns)
+            throw new IllegalArgumentException("Invalid column: " + column);
+
+        while (current.remaining() < RECORD_BYTES && failure == null && !closed)
+            waitForCommitter();
+        if (failure != null)
+            throw failure;
+        if (closed)
+            throw new IllegalStateException("The journal is closed");
+
+        current.putLong(session).put((byte) column);
+        appended++;
+        notifyAll();
+    }
+
+
+    /**
+     * Waits until every record appended so far has been written and forced to disk
+     * @throws IOException if the records could not be written
+     */
+    public synchronized void sync() throws IOException {
+        long target = appended;
+        while (durable < target && failure == null)
+            waitForCommitter();
+        if (failure != null)
+            throw failure;
+    }
+
+
+    /**
+     * Writes the remaining records and closes the file
+     * @throws IOException if the remaining records could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+
+        boolean interrupted = false;
+        while (committer.isAlive()) {
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        channel.close();
+        if (failure != null)
+            throw failure;
+    }
+
+
+    /**
+     * Waits to be woken up by the writing thread. Interrupts are kept for the caller to see.
+     */
+    private void waitForCommitter() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal", e);
+        }
+    }
+
+
+    /**
+     * The loop of the writing thread: takes the buffer of appended records, writes it and forces it to disk, while
+     * new records go into the other buffer, until the journal is closed
+     */
+    private void commit() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (current.position() == 0 && !closed)
+                        wait();
+                    if (current.position() == 0)
+                        return;
+                }
+
+                if (!commitDelay.isZero() && !closed)
+                    Thread.sleep(commitDelay.toMillis(), commitDelay.toNanosPart() % 1_000_000);
+
+                ByteBuffer batch;
+                long sequence;
+                synchronized (this) {
+                    batch = current;
+                    current = spare;
+                    spare = null;
+                    sequence = appended;
+                    notifyAll();
+                }
+
+                batch.flip();
+                while (batch.hasRemaining())
+                    channel.write(batch);
+                channel.force(false);
+
+                synchronized (this) {
+                    batch.clear();
+                    spare = batch;
+                    durable = sequence;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                failure = new IOException("The journal was interrupted", e);
+                notifyAll();
+            }
+        }
+    }
+
+
+    // Reading
+
+    /**
+     * Reads the header of a journal
+     * @param channel the file
+     * @param path the path of the file, for error messages
+     * @return the number of columns and rows of the boards
+     * @throws IOException if the file is not a journal
+     */
+    private static int[] readHeader(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining())
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException(path + " is not a game journal");
+        header.flip();
+
+        if (header.getInt() != MAGIC)
+            throw new IOException(path + " is not a game journal");
+        if (header.get() != VERSION)
+            throw new IOException(path + " has an unsupported journal version");
+        return new int[] { header.get(), header.get() };
+    }
+
+
+    /**
+     * Reads every record of a journal in order, with large sequential reads. A partly written last record and the
+     * records of zeros left by a crash are ignored.
+     * @param path the path of the file
+     * @param visitor receives the records
+     * @return the number of columns and rows of the boards
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public static int[] read(Path path, Visitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int[] dimensions = readHeader(channel, path);
+            long end = HEADER_BYTES + (channel.size() - HEADER_BYTES) / RECORD_BYTES * RECORD_BYTES;
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+            long position = HEADER_BYTES;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(READ_BUFFER_BYTES, end - position));
+                while (buffer.hasRemaining())
+                    if (channel.read(buffer, position + buffer.position()) < 0)
+                        throw new IOException(path + " was truncated while reading");
+                position += buffer.limit();
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    long session = buffer.getLong();
+                    int column = buffer.get();
+                    if (session != 0)
+                        visitor.record(session, column);
+                }
+            }
+            return dimensions;
+        }
+    }
+
+
+    /**
+     * Replays a journal into boards
+     * @param path the path of the file
+     * @return the board of every session which has not ended, and the greatest session id
+     * @throws IOException if the file cannot be read, is not a journal, or holds a move which is not legal
+     */
+    public static Recovery recover(Path path) throws IOException {
+        int[] dimensions;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            dimensions = readHeader(channel, path);
+        }
+
+        Map<Long, Model> sessions = new HashMap<>();
+        long[] lastSession = { 0 };
+        long[] illegal = { -1 };
+
+        read(path, (session, column) -> {
+            lastSession[0] = Math.max(lastSession[0], session);
+            if (column == END_SESSION) {
+                sessions.remove(session);
+            } else if (column == NEW_GAME) {
+                sessions.put(session, new Model(dimensions[0], dimensions[1], true, 1));
+            } else {
+                Model board = sessions.computeIfAbsent(session,
+                                                       id -> new Model(dimensions[0], dimensions[1], true, 1));
+                if (board.isGameOver() || column >= board.getWidth() || !board.move(column))
+                    illegal[0] = session;
+                else
+                    board.swapPlayer();
+            }
+        });
+        if (illegal[0] >= 0)
+            throw new IOException(path + " has an illegal move in session " + illegal[0]);
+
+        return new Recovery(dimensions[0], dimensions[1], sessions, lastSession[0]);
+    }
+
+
+    /**
+     * Writes every game of a journal as a line of moves, in the format read by <code>BatchAnalysis</code>, and
+     * reports the reading speed on standard error. A game is written when its session starts another game or ends;
+     * the games still in progress are written at the end.
+     * Launched with <code>mvn exec:java -Dexec.mainClass=Connect4.GameJournal -Dexec.args="journal.bin
+     * games.txt"</code>. If the output file is <code>-</code>, the games are written to standard output.
+     * @param args the journal and the output file
+     * @throws IOException if the journal cannot be read or the output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: GameJournal <journal file> [<output file> | -]");
+            System.exit(1);
+        }
+
+        Path input = Path.of(args[0]);
+        String output = args.length > 1 ? args[1] : "-";
+
+        long start = System.nanoTime();
+        long[] counts = new long[2];
+        try (Writer writer = output.equals("-") ? new BufferedWriter(new OutputStreamWriter(System.out))
+                                                : Files.newBufferedWriter(Path.of(output))) {
+            Map<Long, StringBuilder> games = new HashMap<>();
+            IOException[] writeError = { null };
+
+            read(input, (session, column) -> {
+                counts[0]++;
+                if (column >= 0) {
+                    games.computeIfAbsent(session, id -> new StringBuilder()).append(BoardSnapshot.symbol(column));
+                    return;
+                }
+
+                StringBuilder game = games.remove(session);
+                if (game != null && game.length() > 0 && writeError[0] == null) {
+                    try {
+                        writer.write(game.append('\n').toString());
+                        counts[1]++;
+                    } catch (IOException e) {
+                        writeError[0] = e;
+                    }
+                }
+            });
+            if (writeError[0] != null)
+                throw writeError[0];
+
+            for (StringBuilder game : games.values()) {
+                if (game.length() > 0) {
+                    writer.write(game.append('\n').toString());
+                    counts[1]++;
+                }
+            }
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        System.err.printf("Read %d records (%.1f MB) and wrote %d games in %.2f s%n", counts[0],
+                          (HEADER_BYTES + counts[0] * RECORD_BYTES) / 1e6, counts[1], elapsed.toNanos() / 1e9);
+    }
+}
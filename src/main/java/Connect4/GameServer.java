@@ -0,0 +1,724 @@
+package Connect4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The <code>GameServer</code> class hosts many games at once over TCP, each connection playing one game against the
+ * computer at a time. The protocol is line-based text, one request and one reply per line, with 1-based columns:
+ *      - <code>MOVE c</code>  -> plays column <code>c</code> and replies with the computer's answer,
+ *                                <code>MOVE r</code>, followed by <code>END w</code> on the same line if the answer
+ *                                ends the game, or just <code>END w</code> if the move ends the game, where
+ *                                <code>w</code> is the winner or 0 for a draw
+ *      - <code>GO</code>      -> makes the computer move now, with the same reply as <code>MOVE</code>
+ *      - <code>NEW</code>     -> starts a new game, replies <code>OK</code>
+ *      - <code>BOARD</code>   -> replies <code>BOARD</code> followed by the moves of the game so far
+ *      - <code>QUIT</code>    -> replies <code>BYE</code> and closes the connection
+ *      - <code>SESSION</code> -> replies <code>SESSION</code> followed by the id of the connection's game session
+ *      - <code>RESUME id</code> -> continues the game of a session recovered from the journal, replies
+ *                                <code>BOARD</code> followed by its moves
+ * A request which cannot be served gets <code>ERROR</code> and a reason, and <code>BUSY</code> if all the search
+ * threads are taken and their queue is full. A new connection starts with an empty board and Player 1 to move.
+ * Requests may be sent ahead of the replies, and are answered in order.
+ *
+ * A single thread owns every connection and every board, and waits on a <code>Selector</code> for input, so an idle
+ * game costs a socket and a board but no thread. Searches are handed to a fixed number of search threads with a
+ * bounded queue, and share one <code>Engine</code>; each search gets a snapshot of the board, and its result is handed
+ * back to the connection thread, which plays it. A search must finish within the move timeout, counted from when the
+ * request was read, or the request is answered with <code>ERROR timed out</code>; the player's move stays on the
+ * board, and <code>GO</code> asks for the computer's move again. Connections which send nothing for the idle timeout
+ * are closed.
+ *
+ * With a <code>GameJournal</code>, every game session is recorded: its start, the moves of both sides and its end
+ * when the connection closes. The sessions of a server which stopped without closing them, such as after a crash or
+ * <code>close</code>, can be recovered when the next server starts, and their players reconnect and send
+ * <code>RESUME</code> with the id they got from <code>SESSION</code>.
+ */
+public class GameServer implements Closeable {
+
+    // Fields
+
+    // The longest request line accepted, in bytes
+    private static final int MAX_LINE = 256;
+
+    // How many requests a connection may send ahead while it waits for the computer's move
+    private static final int MAX_PENDING = 16;
+
+    private final Engine engine;
+
+    private final int columns;
+    private final int rows;
+
+    private final SearchLimits limits;
+
+    // How long a move request may take, from when it is read to when the search finishes
+    private final Duration moveTimeout;
+
+    // How long a connection may send nothing before it is closed
+    private final Duration idleTimeout;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+
+    // Runs the searches, with a bounded queue of waiting searches
+    private final ThreadPoolExecutor searchThreads;
+
+    // Work handed back to the connection thread by the search threads
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+
+    // Every open connection, only used by the connection thread
+    private final Set<Session> sessions = new HashSet<>();
+
+    private final Thread connectionThread;
+
+    private volatile boolean running = true;
+
+    // Records the game sessions, or null
+    private GameJournal journal;
+
+    // The sessions recovered from the journal which no connection has resumed yet, by id
+    private final Map<Long, Model> recovered = new HashMap<>();
+
+    private long nextSessionId = 1;
+
+    // Counters, which can be read from any thread
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final LongAdder movesPlayed = new LongAdder();
+    private final LongAdder rejectedMoves = new LongAdder();
+    private final LongAdder timedOutMoves = new LongAdder();
+    private final LongAdder evictedSessions = new LongAdder();
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * Opens the listening socket, the server accepts connections once <code>start</code> is called.
+     * @param address the address to listen on, port 0 picks a free port
+     * @param engine the engine which searches the computer's moves, with the dimensions of the games
+     * @param columns number of columns of the boards of the games
+     * @param rows number of rows of the boards of the games
+     * @param limits how far each search of the computer may go
+     * @param searchThreads the number of threads which search at the same time
+     * @param queueCapacity how many searches may wait for a thread before requests are answered with
+     * <code>BUSY</code>
+     * @param moveTimeout how long a move request may take, including the time it waits for a thread
+     * @param idleTimeout how long a connection may send nothing before it is closed
+     * @throws IOException if the socket cannot be opened
+     */
+    public GameServer(InetSocketAddress address, Engine engine, int columns, int rows, SearchLimits limits,
+                      int searchThreads, int queueCapacity, Duration moveTimeout, Duration idleTimeout)
+            throws IOException {
+        this.engine = engine;
+        this.columns = columns;
+        this.rows = rows;
+        this.limits = limits;
+        this.moveTimeout = moveTimeout;
+        this.idleTimeout = idleTimeout;
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.searchThreads = new ThreadPoolExecutor(searchThreads, searchThreads, 0, TimeUnit.SECONDS,
+                                                    new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "game-server-search-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.connectionThread = new Thread(this::serve, "game-server-connections");
+    }
+
+
+    // Getters
+
+    /**
+     * @return the port the server listens on
+     * @throws IOException if the socket has been closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * @return the number of open connections
+     */
+    public int getOpenSessions() { return openSessions.get(); }
+
+    /**
+     * @return the number of moves the computer has played
+     */
+    public long getMovesPlayed() { return movesPlayed.sum(); }
+
+    /**
+     * @return the number of move requests answered with <code>BUSY</code>
+     */
+    public long getRejectedMoves() { return rejectedMoves.sum(); }
+
+    /**
+     * @return the number of move requests which did not finish within the move timeout, or whose search failed
+     */
+    public long getTimedOutMoves() { return timedOutMoves.sum(); }
+
+    /**
+     * @return the number of connections closed for being idle
+     */
+    public long getEvictedSessions() { return evictedSessions.sum(); }
+
+
+    // Setters
+
+    /**
+     * Records the game sessions in a journal, and makes the sessions recovered from it available to
+     * <code>RESUME</code>. Must be called before <code>start</code>. The journal is not closed with the server.
+     * @param journal the journal, for boards of the dimensions of the server
+     * @param recovery the sessions recovered from the journal, or null if there are none
+     */
+    public void setJournal(GameJournal journal, GameJournal.Recovery recovery) {
+        if (connectionThread.isAlive())
+            throw new IllegalStateException("The server is already started");
+        this.journal = journal;
+        if (recovery != null) {
+            recovered.putAll(recovery.sessions());
+            nextSessionId = Math.max(nextSessionId, recovery.lastSession() + 1);
+        }
+    }
+
+
+    // Serving
+
+    /**
+     * Starts accepting connections on a background thread
+     */
+    public void start() { connectionThread.start(); }
+
+
+    /**
+     * Stops the server: closes every connection and the listening socket, and stops the search threads
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+
+        boolean interrupted = false;
+        while (connectionThread.isAlive()) {
+            try {
+                connectionThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        searchThreads.shutdownNow();
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+
+    /**
+     * The loop of the connection thread: accepts connections, reads requests, writes replies, plays the moves found
+     * by the search threads and closes idle connections, until the server is closed
+     */
+    private void serve() {
+        long checkInterval = Math.max(1, Math.min(1000, idleTimeout.toMillis() / 4));
+        long nextCheck = System.nanoTime();
+
+        while (running) {
+            try {
+                selector.select(checkInterval);
+            } catch (IOException e) {
+                break;
+            }
+
+            for (SelectionKey key : selector.selectedKeys()) {
+                if (!key.isValid())
+                    continue;
+                if (key.isAcceptable())
+                    accept();
+                else
+                    handle((Session) key.attachment(), key);
+            }
+            selector.selectedKeys().clear();
+
+            Runnable completion;
+            while ((completion = completions.poll()) != null)
+                completion.run();
+
+            long now = System.nanoTime();
+            if (now >= nextCheck) {
+                evictIdle(now);
+                nextCheck = now + checkInterval * 1_000_000;
+            }
+        }
+
+        // the sessions stay open in the journal, to be resumed by the next server
+        for (Session session : new ArrayList<>(sessions))
+            close(session, false);
+    }
+
+
+    /**
+     * Accepts all the pending connections, each one with a new game
+     */
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Session session = new Session(channel, nextSessionId++, new Model(columns, rows, true, 1));
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+                sessions.add(session);
+                openSessions.incrementAndGet();
+                record(session, GameJournal.NEW_GAME);
+            }
+        } catch (IOException e) {
+            // the connection was lost before it could be set up
+        }
+    }
+
+
+    /**
+     * Reads the requests and writes the replies of a connection which is ready
+     * @param session the connection
+     * @param key the selection key of the connection
+     */
+    private void handle(Session session, SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                session.input.clear();
+                int read = session.channel.read(session.input);
+                if (read < 0) {
+                    close(session, true);
+                    return;
+                }
+                session.lastActive = System.nanoTime();
+                session.input.flip();
+                readLines(session);
+            }
+            if (key.isValid() && key.isWritable())
+                flush(session);
+        } catch (IOException e) {
+            close(session, true);
+        }
+    }
+
+
+    /**
+     * Splits the bytes read from a connection into lines and serves each complete one
+     * @param session the connection
+     */
+    private void readLines(Session session) {
+        while (session.input.hasRemaining() && session.channel.isOpen()) {
+            char c = (char) (session.input.get() & 0xFF);
+            if (c == '\n') {
+                String line = session.line.toString().strip();
+                session.line.setLength(0);
+                if (line.isEmpty())
+                    continue;
+                if (session.pending.size() == MAX_PENDING) {
+                    reply(session, "ERROR too many requests");
+                    session.closeAfterWrite = true;
+                    return;
+                }
+                session.pending.add(line);
+                servePending(session);
+            } else if (session.line.length() < MAX_LINE) {
+                session.line.append(c);
+            } else {
+                reply(session, "ERROR line too long");
+                session.closeAfterWrite = true;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Serves the requests of a connection in the order they arrived, until one of them starts a search, whose reply
+     * must be sent before the next request is served
+     * @param session the connection
+     */
+    private void servePending(Session session) {
+        while (!session.searching && !session.pending.isEmpty() && session.channel.isOpen() &&
+               !session.closeAfterWrite)
+            serve(session, session.pending.poll());
+    }
+
+
+    /**
+     * Serves one request
+     * @param session the connection which sent the request
+     * @param line the request
+     */
+    private void serve(Session session, String line) {
+        String[] words = line.split("\\s+");
+        switch (words[0].toUpperCase()) {
+            case "MOVE" -> move(session, words);
+            case "GO" -> {
+                if (session.board.isGameOver())
+                    reply(session, "ERROR the game is over");
+                else
+                    search(session, -1);
+            }
+            case "NEW" -> {
+                session.board = new Model(columns, rows, true, 1);
+                record(session, GameJournal.NEW_GAME);
+                reply(session, "OK");
+            }
+            case "BOARD" -> reply(session, "BOARD " + session.board.snapshot().toMoves());
+            case "QUIT" -> {
+                reply(session, "BYE");
+                session.closeAfterWrite = true;
+            }
+            case "SESSION" -> reply(session, "SESSION " + session.id);
+            case "RESUME" -> resume(session, words);
+            default -> reply(session, "ERROR unknown request " + words[0]);
+        }
+    }
+
+
+    /**
+     * Plays the move of a <code>MOVE</code> request and starts the search for the computer's answer
+     * @param session the connection which sent the request
+     * @param words the words of the request
+     */
+    private void move(Session session, String[] words) {
+        Model board = session.board;
+        if (board.isGameOver()) {
+            reply(session, "ERROR the game is over");
+            return;
+        }
+
+        int column;
+        try {
+            column = words.length == 2 ? Integer.parseInt(words[1]) - 1 : -1;
+        } catch (NumberFormatException e) {
+            column = -1;
+        }
+        if (column < 0 || column >= columns) {
+            reply(session, "ERROR expected MOVE and a column from 1 to " + columns);
+            return;
+        }
+        if (!board.move(column)) {
+            reply(session, "ERROR column " + (column + 1) + " is full");
+            return;
+        }
+        board.swapPlayer();
+
+        if (board.isGameOver()) {
+            record(session, column);
+            reply(session, "END " + board.getWinner());
+        } else {
+            search(session, column);
+        }
+    }
+
+
+    /**
+     * Continues the game of a session recovered from the journal on this connection, whose own session ends
+     * @param session the connection which sent the request
+     * @param words the words of the request
+     */
+    private void resume(Session session, String[] words) {
+        Model board = null;
+        long id = -1;
+        try {
+            if (words.length == 2) {
+                id = Long.parseLong(words[1]);
+                board = recovered.remove(id);
+            }
+        } catch (NumberFormatException e) {
+            // answered below
+        }
+        if (board == null) {
+            reply(session, "ERROR expected RESUME and the id of a recovered session");
+            return;
+        }
+
+        record(session, GameJournal.END_SESSION);
+        session.id = id;
+        session.board = board;
+        reply(session, "BOARD " + board.snapshot().toMoves());
+    }
+
+
+    /**
+     * Hands the search for the computer's move to the search threads. If they are all busy and their queue is full,
+     * the player's move is taken back and the request is answered with <code>BUSY</code>.
+     * @param session the connection which is waiting for the move
+     * @param playedColumn index of the column the player has just played, to take back, or -1 if there is none
+     */
+    private void search(Session session, int playedColumn) {
+        BoardSnapshot position = session.board.snapshot();
+        long deadline = System.nanoTime() + moveTimeout.toNanos();
+
+        try {
+            searchThreads.execute(() -> {
+                long remaining = deadline - System.nanoTime();
+                SearchResult result = null;
+                String error = "ERROR timed out";
+                try {
+                    if (remaining > 0) {
+                        Duration budget = limits.budget() == null ? Duration.ofNanos(remaining)
+                                        : Duration.ofNanos(Math.min(remaining, limits.budget().toNanos()));
+                        result = engine.search(position, new SearchLimits(limits.depth(), budget));
+                    }
+                } catch (RuntimeException e) {
+                    error = "ERROR the search failed";
+                }
+
+                SearchResult found = result;
+                String failure = error;
+                completions.add(() -> answer(session, found, failure));
+                selector.wakeup();
+            });
+            session.searching = true;
+            if (playedColumn >= 0)
+                record(session, playedColumn);
+        } catch (RejectedExecutionException e) {
+            rejectedMoves.increment();
+            if (playedColumn >= 0) {
+                session.board.swapPlayer();
+                session.board.unmove(playedColumn);
+            }
+            reply(session, "BUSY");
+        }
+    }
+
+
+    /**
+     * Plays the computer's move found by a search thread and replies to the request which asked for it
+     * @param session the connection which is waiting for the move
+     * @param result the result of the search, or null if there is none
+     * @param error the reply to send if there is no result
+     */
+    private void answer(Session session, SearchResult result, String error) {
+        session.searching = false;
+        if (!session.channel.isOpen())
+            return;
+
+        Model board = session.board;
+        if (result == null) {
+            timedOutMoves.increment();
+            reply(session, error);
+            servePending(session);
+            return;
+        }
+
+        board.move(result.move());
+        board.swapPlayer();
+        movesPlayed.increment();
+        record(session, result.move());
+
+        String reply = "MOVE " + (result.move() + 1);
+        if (board.isGameOver())
+            reply += " END " + board.getWinner();
+        reply(session, reply);
+        servePending(session);
+    }
+
+
+    /**
+     * Queues a reply line and writes as much of it as the connection takes right away
+     * @param session the connection
+     * @param line the reply, without the line break
+     */
+    private void reply(Session session, String line) {
+        session.output.add(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.US_ASCII)));
+        try {
+            flush(session);
+        } catch (IOException e) {
+            close(session, true);
+        }
+    }
+
+
+    /**
+     * Writes the queued replies of a connection until they are all written or the socket buffer is full, in which
+     * case the connection thread is told to wait until it can write again
+     * @param session the connection
+     * @throws IOException if the connection is lost
+     */
+    private void flush(Session session) throws IOException {
+        while (!session.output.isEmpty()) {
+            ByteBuffer buffer = session.output.peek();
+            session.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            session.output.poll();
+        }
+
+        if (session.closeAfterWrite)
+            close(session, true);
+        else if (session.key.isValid())
+            session.key.interestOps(SelectionKey.OP_READ);
+    }
+
+
+    /**
+     * Closes the connections which have sent nothing for longer than the idle timeout. Connections waiting for the
+     * computer's move are left open.
+     * @param now the current System.nanoTime()
+     */
+    private void evictIdle(long now) {
+        long limit = idleTimeout.toNanos();
+        for (Session session : new ArrayList<>(sessions))
+            if (!session.searching && now - session.lastActive > limit) {
+                evictedSessions.increment();
+                session.closeAfterWrite = true;
+                reply(session, "BYE idle");
+            }
+    }
+
+
+    /**
+     * Records a move or a marker of a session in the journal, if there is one. If the journal fails, the server stops
+     * recording and goes on serving.
+     * @param session the connection
+     * @param column index of the column played, <code>GameJournal.NEW_GAME</code> or
+     * <code>GameJournal.END_SESSION</code>
+     */
+    private void record(Session session, int column) {
+        if (journal == null)
+            return;
+        try {
+            journal.append(session.id, column);
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Error: the game journal failed, games are no longer recorded: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+
+    /**
+     * Closes a connection and forgets its game
+     * @param session the connection
+     * @param end whether the session ends in the journal, rather than staying open to be resumed
+     */
+    private void close(Session session, boolean end) {
+        if (!sessions.remove(session))
+            return;
+        if (end)
+            record(session, GameJournal.END_SESSION);
+        openSessions.decrementAndGet();
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+
+    /**
+     * A connection and its game, only used by the connection thread
+     */
+    private static class Session {
+        final SocketChannel channel;
+        SelectionKey key;
+        long id;
+        Model board;
+
+        final ByteBuffer input = ByteBuffer.allocate(512);
+        final StringBuilder line = new StringBuilder();
+        final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+
+        // Requests waiting for the reply to an earlier one
+        final ArrayDeque<String> pending = new ArrayDeque<>();
+
+        long lastActive = System.nanoTime();
+
+        // True while a search for the computer's move is running
+        boolean searching;
+
+        // True once the connection should be closed when its replies are written
+        boolean closeAfterWrite;
+
+        Session(SocketChannel channel, long id, Model board) {
+            this.channel = channel;
+            this.id = id;
+            this.board = board;
+        }
+    }
+
+
+    /**
+     * Runs a server for 7x6 games until the process is stopped. With a journal file, the sessions left open in it are
+     * recovered first, and the games are recorded in it.
+     * Launched with <code>mvn exec:java -Dexec.mainClass=Connect4.GameServer -Dexec.args="port threads moveMillis
+     * idleSeconds journal.bin"</code>.
+     * @param args the port, the number of search threads, the time budget of a move in milliseconds, the idle
+     * timeout in seconds and the journal file
+     * @throws IOException if the socket or the journal cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Duration budget = Duration.ofMillis(args.length > 2 ? Long.parseLong(args[2]) : 100);
+        Duration idle = Duration.ofSeconds(args.length > 3 ? Long.parseLong(args[3]) : 300);
+
+        Engine engine = new Engine(7, 6, 64);
+        engine.setMoveCache(new MoveCache(1_000_000, 256L << 20, MoveCache.Eviction.TINY_LFU));
+        GameServer server = new GameServer(new InetSocketAddress(port), engine, 7, 6, SearchLimits.time(budget),
+                                           threads, 64 * threads, budget.multipliedBy(10), idle);
+
+        if (args.length > 4) {
+            Path path = Path.of(args[4]);
+            GameJournal.Recovery recovery = Files.exists(path) ? GameJournal.recover(path) : null;
+            GameJournal journal = GameJournal.open(path, 7, 6, Duration.ofMillis(2));
+            server.setJournal(journal, recovery);
+            if (recovery != null)
+                System.out.println("Recovered " + recovery.sessions().size() + " sessions from " + path);
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Error: " + e.getMessage());
+                }
+            }));
+        }
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+    }
+}
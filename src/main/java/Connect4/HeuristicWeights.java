@@ -0,0 +1,140 @@
+package Connect4;
+
+
+/**
+ * The <code>HeuristicWeights</code> class holds the scores the heuristic evaluation gives to a 4-cell window, from the
+ * point of view of one player, depending on how many of its cells each player occupies. Only windows which one player
+ * shares with free cells score anything.
+ */
+public final class HeuristicWeights {
+
+    // Fields
+
+    // The weights the game has always used
+    public static final HeuristicWeights DEFAULT = new HeuristicWeights(100, 16, 8, -100, -32, -8);
+
+    private final int four;
+    private final int three;
+    private final int two;
+    private final int opponentFour;
+    private final int opponentThree;
+    private final int opponentTwo;
+
+    // Score of a window indexed by [own chips * 5 + opponent chips]
+    private final int[] table = new int[25];
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * @param four score of a window with 4 own chips
+     * @param three score of a window with 3 own chips and 1 free cell
+     * @param two score of a window with 2 own chips and 2 free cells
+     * @param opponentFour score of a window with 4 chips of the opponent
+     * @param opponentThree score of a window with 3 chips of the opponent and 1 free cell
+     * @param opponentTwo score of a window with 2 chips of the opponent and 2 free cells
+     */
+    public HeuristicWeights(int four, int three, int two, int opponentFour, int opponentThree, int opponentTwo) {
+        this.four = four;
+        this.three = three;
+        this.two = two;
+        this.opponentFour = opponentFour;
+        this.opponentThree = opponentThree;
+        this.opponentTwo = opponentTwo;
+
+        table[4 * 5] = four;
+        table[3 * 5] = three;
+        table[2 * 5] = two;
+        table[4] = opponentFour;
+        table[3] = opponentThree;
+        table[2] = opponentTwo;
+    }
+
+
+    /**
+     * Reads weights written by <code>toString</code>
+     * @param weights the six weights separated by commas, in the order of the constructor
+     * @return the weights
+     * @throws IllegalArgumentException if the string does not hold six integers
+     */
+    public static HeuristicWeights parse(String weights) {
+        String[] parts = weights.split(",");
+        if (parts.length != 6)
+            throw new IllegalArgumentException("Expected 6 weights separated by commas: " + weights);
+
+        int[] values = new int[6];
+        for (int i = 0; i < 6; i++)
+            values[i] = Integer.parseInt(parts[i].strip());
+        return new HeuristicWeights(values[0], values[1], values[2], values[3], values[4], values[5]);
+    }
+
+
+    // Getters
+
+    /**
+     * @return score of a window with 4 own chips
+     */
+    public int getFour() { return four; }
+
+    /**
+     * @return score of a window with 3 own chips and 1 free cell
+     */
+    public int getThree() { return three; }
+
+    /**
+     * @return score of a window with 2 own chips and 2 free cells
+     */
+    public int getTwo() { return two; }
+
+    /**
+     * @return score of a window with 4 chips of the opponent
+     */
+    public int getOpponentFour() { return opponentFour; }
+
+    /**
+     * @return score of a window with 3 chips of the opponent and 1 free cell
+     */
+    public int getOpponentThree() { return opponentThree; }
+
+    /**
+     * @return score of a window with 2 chips of the opponent and 2 free cells
+     */
+    public int getOpponentTwo() { return opponentTwo; }
+
+    /**
+     * @param own the number of own chips in a window
+     * @param opponent the number of chips of the opponent in the window
+     * @return the score of the window
+     */
+    int score(int own, int opponent) { return table[own * 5 + opponent]; }
+
+
+    // Object methods
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof HeuristicWeights other))
+            return false;
+
+        return four == other.four && three == other.three && two == other.two && opponentFour == other.opponentFour &&
+               opponentThree == other.opponentThree && opponentTwo == other.opponentTwo;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = four;
+        h = h * 31 + three;
+        h = h * 31 + two;
+        h = h * 31 + opponentFour;
+        h = h * 31 + opponentThree;
+        return h * 31 + opponentTwo;
+    }
+
+    @Override
+    public String toString() {
+        return four + "," + three + "," + two + "," + opponentFour + "," + opponentThree + "," + opponentTwo;
+    }
+}
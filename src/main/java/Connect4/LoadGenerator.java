@@ -0,0 +1,277 @@
+package Connect4;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * The <code>LoadGenerator</code> class measures a <code>GameServer</code> by playing many games against it at once.
+ * Each client connection has its own thread, which plays random legal moves and waits for the computer's answer before
+ * playing the next one, and the time from sending a move to reading the answer is recorded for every request.
+ */
+public class LoadGenerator {
+
+    // Fields
+
+    private final InetSocketAddress server;
+
+    private final int columns;
+    private final int rows;
+
+    private final long seed;
+
+
+    /**
+     * The outcome of a load test
+     * @param requests the number of move requests answered with a move or the end of the game
+     * @param busy the number of move requests answered with <code>BUSY</code>
+     * @param errors the number of move requests answered with an error
+     * @param games the number of games played to the end
+     * @param elapsed how long the test took
+     * @param latencies the latency of every answered request in microseconds, sorted
+     */
+    public record Report(long requests, long busy, long errors, long games, Duration elapsed, long[] latencies) {
+
+        /**
+         * @return the number of answered requests per second
+         */
+        public double throughput() { return requests / (elapsed.toNanos() / 1e9); }
+
+        /**
+         * @param fraction the percentile as a fraction, for example 0.99
+         * @return the latency below which the given fraction of the requests were answered, in microseconds
+         */
+        public long latencyPercentile(double fraction) {
+            if (latencies.length == 0)
+                return 0;
+            int index = (int) Math.ceil(fraction * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+        }
+    }
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * @param server the address of the server
+     * @param columns number of columns of the boards the server plays on
+     * @param rows number of rows of the boards the server plays on
+     * @param seed the seed of the random moves
+     */
+    public LoadGenerator(InetSocketAddress server, int columns, int rows, long seed) {
+        this.server = server;
+        this.columns = columns;
+        this.rows = rows;
+        this.seed = seed;
+    }
+
+
+    // Running
+
+    /**
+     * Plays games against the server over many connections at once
+     * @param connections the number of connections, each with its own thread
+     * @param requestsPerConnection the number of move requests each connection sends
+     * @return the outcome of the test
+     * @throws IOException if a connection fails
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the connections
+     */
+    public Report run(int connections, int requestsPerConnection) throws IOException, InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(connections);
+        long start = System.nanoTime();
+        try {
+            Future<?>[] tasks = new Future<?>[connections];
+            Client[] results = new Client[connections];
+            for (int i = 0; i < connections; i++) {
+                Client client = new Client(new SplittableRandom(seed + i), requestsPerConnection);
+                results[i] = client;
+                tasks[i] = clients.submit(() -> {
+                    client.play();
+                    return null;
+                });
+            }
+            for (Future<?> task : tasks)
+                task.get();
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            long requests = 0;
+            long busy = 0;
+            long errors = 0;
+            long games = 0;
+            for (Client client : results) {
+                requests += client.answered;
+                busy += client.busy;
+                errors += client.errors;
+                games += client.games;
+            }
+
+            long[] latencies = new long[(int) requests];
+            int count = 0;
+            for (Client client : results) {
+                System.arraycopy(client.latencies, 0, latencies, count, client.answered);
+                count += client.answered;
+            }
+            Arrays.sort(latencies);
+            return new Report(requests, busy, errors, games, elapsed, latencies);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause)
+                throw cause;
+            throw new IllegalStateException("A client failed", e.getCause());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+
+    /**
+     * One connection to the server, which keeps a copy of its board to choose legal moves
+     */
+    private class Client {
+        final SplittableRandom random;
+        final int requests;
+        final long[] latencies;
+
+        int answered;
+        int busy;
+        int errors;
+        int games;
+
+        Client(SplittableRandom random, int requests) {
+            this.random = random;
+            this.requests = requests;
+            this.latencies = new long[requests];
+        }
+
+        /**
+         * Sends the move requests, starting a new game whenever one ends
+         * @throws IOException if the connection fails
+         */
+        void play() throws IOException {
+            try (Socket socket = new Socket()) {
+                socket.setTcpNoDelay(true);
+                socket.connect(server);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                             StandardCharsets.US_ASCII));
+                OutputStream out = socket.getOutputStream();
+                Model board = new Model(columns, rows, true, 1);
+
+                for (int i = 0; i < requests; i++) {
+                    int column = randomMove(board);
+                    long sent = System.nanoTime();
+                    out.write(("MOVE " + (column + 1) + "\n").getBytes(StandardCharsets.US_ASCII));
+                    String reply = in.readLine();
+                    long latency = (System.nanoTime() - sent) / 1000;
+                    if (reply == null)
+                        throw new IOException("The server closed the connection");
+
+                    String[] words = reply.split(" ");
+                    if (words[0].equals("BUSY")) {
+                        busy++;
+                        continue;
+                    }
+                    if (!words[0].equals("MOVE") && !words[0].equals("END")) {
+                        errors++;
+                        continue;
+                    }
+
+                    latencies[answered++] = latency;
+                    board.move(column);
+                    board.swapPlayer();
+                    if (words[0].equals("MOVE")) {
+                        board.move(Integer.parseInt(words[1]) - 1);
+                        board.swapPlayer();
+                    }
+
+                    if (board.isGameOver()) {
+                        games++;
+                        out.write("NEW\n".getBytes(StandardCharsets.US_ASCII));
+                        in.readLine();
+                        board = new Model(columns, rows, true, 1);
+                    }
+                }
+
+                out.write("QUIT\n".getBytes(StandardCharsets.US_ASCII));
+                in.readLine();
+            }
+        }
+
+        /**
+         * @param board the board of the game
+         * @return index of a random column which is not full
+         */
+        int randomMove(Model board) {
+            while (true) {
+                int column = random.nextInt(columns);
+                if (board.getColumnHeight(column) < board.getHeight())
+                    return column;
+            }
+        }
+    }
+
+
+    /**
+     * Runs a load test and prints the throughput and latency. Without a server address, a 7x6 server is started in
+     * this process on the loopback interface and stopped at the end.
+     * Launched with <code>mvn exec:java -Dexec.mainClass=Connect4.LoadGenerator -Dexec.args="connections requests
+     * moveMillis host:port"</code>.
+     * @param args the number of connections, the number of requests per connection, the time budget of a move in
+     * milliseconds for the local server and the address of the server
+     * @throws IOException if a connection fails
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Duration budget = Duration.ofMillis(args.length > 2 ? Long.parseLong(args[2]) : 5);
+
+        GameServer localServer = null;
+        Engine engine = null;
+        InetSocketAddress address;
+        if (args.length > 3) {
+            String[] parts = args[3].split(":");
+            address = new InetSocketAddress(parts[0], Integer.parseInt(parts[1]));
+        } else {
+            int threads = Runtime.getRuntime().availableProcessors();
+            engine = new Engine(7, 6, 64);
+            engine.setMoveCache(new MoveCache(1_000_000, 256L << 20, MoveCache.Eviction.TINY_LFU));
+            localServer = new GameServer(new InetSocketAddress("127.0.0.1", 0), engine, 7, 6,
+                                         SearchLimits.time(budget), threads, connections, Duration.ofSeconds(10),
+                                         Duration.ofMinutes(1));
+            localServer.start();
+            address = new InetSocketAddress("127.0.0.1", localServer.getPort());
+        }
+
+        try {
+            Report report = new LoadGenerator(address, 7, 6, System.nanoTime()).run(connections, requests);
+            System.out.printf("%d requests over %d connections in %.1f s: %.0f requests/s%n", report.requests(),
+                              connections, report.elapsed().toNanos() / 1e9, report.throughput());
+            System.out.printf("latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                              report.latencyPercentile(0.5) / 1000.0, report.latencyPercentile(0.99) / 1000.0,
+                              report.latencyPercentile(1) / 1000.0);
+            System.out.printf("%d games finished, %d busy, %d errors%n", report.games(), report.busy(),
+                              report.errors());
+            if (engine != null) {
+                MoveCache cache = engine.getMoveCache();
+                System.out.printf("move cache: hit rate %.3f, %d hits, %d misses, %d coalesced, %d evictions%n",
+                                  cache.getHitRate(), cache.getHits(), cache.getMisses(), cache.getCoalesced(),
+                                  cache.getEvictions());
+            }
+        } finally {
+            if (localServer != null)
+                localServer.close();
+        }
+    }
+}
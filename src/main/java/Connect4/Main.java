@@ -3,7 +3,9 @@ package Connect4;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.concurrent.ForkJoinPool;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 
 
 /**
@@ -16,10 +18,35 @@ public class Main {
 
     static ComputerPlayer computerPlayer;
 
+    // Used instead of the heuristic search in the perfect play mode, null in the other modes
+    static Solver solver;
+
+    // The opening book used by the solver, if the file exists in the working directory
+    static final Path OPENING_BOOK = Path.of("connect4-book.bin");
+
+    // Precomputed moves of the heuristic search, used if the file exists in the working directory
+    static final Path MOVE_DATABASE = Path.of("connect4-moves.bin");
+
+    // How long the solver may take before the computer falls back to the heuristic search
+    static final Duration SOLVER_BUDGET = Duration.ofSeconds(3);
+    static final Duration FALLBACK_BUDGET = Duration.ofSeconds(1);
+
+    // How long the computer thinks on its own time in the pondering mode
+    static final Duration PONDERING_BUDGET = Duration.ofSeconds(2);
+
+    // True in the pondering mode, where the computer also thinks while the player chooses a move
+    static boolean pondering;
+
+    // The computer's answer to the player's last move, found while pondering, or null
+    static SearchResult ponderedAnswer;
+
+    // The depth the computer's last search on its own time reached
+    static int lastDepth;
+
 
     /**
      * Prompts the player to enter the list number of their desired mode of play. Reads user input from stdin until the
-     * player enters an integer: either 1 or 2.
+     * player enters an integer: 1, 2, 3 or 4.
      * @return the list number of the chosen mode of play
      * @throws IOException if an error is encountered while reading the user input
      */
@@ -29,7 +56,7 @@ public class Main {
                 System.out.print("Choose a mode: ");
                 int mode = Integer.parseInt(reader.readLine());
 
-                if (mode < 1 || mode > 2)
+                if (mode < 1 || mode > 4)
                     System.out.println("The mode you have selected does not exist. Try again.");
                 else
                     return mode;
@@ -88,6 +115,90 @@ public class Main {
     }
 
 
+    /**
+     * Creates the solver for the perfect play mode, with the opening book if there is one
+     * @return the solver
+     */
+    private static Solver createSolver() {
+        PositionDatabase book = openDatabase(OPENING_BOOK, PositionDatabase.KEY_BITBOARD);
+        return new Solver(7, 6, 64, book);
+    }
+
+
+    /**
+     * Opens a position database from the working directory, if the file exists
+     * @param path the path of the database file
+     * @param keyType the kind of keys the database must use
+     * @return the database, or null if there is no usable file
+     */
+    private static PositionDatabase openDatabase(Path path, int keyType) {
+        if (!Files.exists(path))
+            return null;
+
+        try {
+            PositionDatabase database = PositionDatabase.open(path);
+            if (database.getKeyType() == keyType && database.getColumns() == 7 && database.getRows() == 6)
+                return database;
+            System.out.println("Error: " + path + " is not a database for this mode, playing without it");
+        } catch (IOException e) {
+            System.out.println("Error: " + path + " could not be read, playing without it");
+        }
+        return null;
+    }
+
+
+    /**
+     * Computes the computer's move. In the perfect play mode, the solver is tried first, and if it cannot solve the
+     * board in time, the heuristic search is used instead. In the pondering mode, the answer found while the player
+     * was thinking is played at once if it is at least as deep as the computer's last search, and otherwise the
+     * computer searches on its own time, starting from the transposition table the pondering has filled.
+     * @param board reference to the Model
+     * @return index of the column of the computer's move
+     */
+    private static int getComputerMove(Model board) {
+        if (solver != null) {
+            int column = solver.bestMove(board, SOLVER_BUDGET);
+            if (column >= 0)
+                return column;
+            return computerPlayer.getMove(FALLBACK_BUDGET);
+        }
+        if (pondering) {
+            SearchResult answer = ponderedAnswer;
+            ponderedAnswer = null;
+            if (answer != null && answer.stats().depthReached() >= lastDepth)
+                return answer.move();
+
+            SearchResult result = computerPlayer.search(Integer.MAX_VALUE, PONDERING_BUDGET);
+            lastDepth = result.stats().depthReached();
+            return result.move();
+        }
+        return computerPlayer.getMove();
+    }
+
+
+    /**
+     * Reads the player's move. In the pondering mode, the computer searches its answers to the player's possible
+     * moves in the background while the player thinks, and keeps the answer to the move which was played.
+     * @param board reference to the Model
+     * @return the number of the column chosen by the player
+     * @throws IOException if an I/O error occurs when reading from standard input
+     */
+    private static int getPlayerMove(Model board) throws IOException {
+        if (!pondering)
+            return getColumnNumber(board);
+
+        Ponderer ponderer = new Ponderer(board, computerPlayer.getTranspositionTable());
+        ponderer.start();
+        int column = -1;
+        try {
+            column = getColumnNumber(board);
+        } finally {
+            ponderedAnswer = ponderer.stop(column - 1);
+        }
+        return column;
+    }
+
+
     /**
      * Entry point of the program. Loops the game until one of the players wins or a draw is reached.
      * @param args command line arguments
@@ -100,25 +211,26 @@ public class Main {
                 View.showModeMenu();
                 int mode = getMode();
 
-                Model board = new Model(7, 6, mode == 2, 1);
+                Model board = new Model(7, 6, mode != 1, 1);
 
-                if (mode == 2)
+                if (mode != 1) {
                     computerPlayer = new ComputerPlayer(board);
+                    computerPlayer.setDatabase(openDatabase(MOVE_DATABASE, PositionDatabase.KEY_ZOBRIST));
+                }
 
-                ForkJoinPool pool = new ForkJoinPool();
-
-                while (true) {
-                    WinChecker winChecker = new WinChecker(board, 0, board.getWidth() - 1);
-                    boolean end = pool.invoke(winChecker);
-                    if (end) break;
+                solver = mode == 3 ? createSolver() : null;
+                pondering = mode == 4;
+                ponderedAnswer = null;
+                lastDepth = 0;
 
+                while (!board.isGameOver()) {
                     int columnIndex;
                     if (board.isComputerPlayer()) {
                         if (board.getPlayer() == 1) {
                             View.showBoard(board);
-                            columnIndex = getColumnNumber(board) - 1;
+                            columnIndex = getPlayerMove(board) - 1;
                         } else {
-                            columnIndex = computerPlayer.getMove();
+                            columnIndex = getComputerMove(board);
                         }
                     } else {
                         View.showBoard(board);
@@ -1,5 +1,6 @@
 package Connect4;
 
+import java.util.SplittableRandom;
 import java.util.concurrent.RecursiveTask;
 
 /**
@@ -18,18 +19,65 @@ public class Model {
 
     // Fields
 
+    // The largest supported board
+    public static final int MAX_COLUMNS = 16;
+    public static final int MAX_ROWS = 16;
+
+    // The number of bits of the bitboard of the largest supported board
+    private static final int MAX_BITS = MAX_COLUMNS * (MAX_ROWS + 1);
+
+    /* Random keys used for Zobrist hashing: one key for every (player, bit) pair and one key which is present in the
+     * hash when it is Player 2's turn. The seed is fixed, so hashes are the same across runs. The keys of the first
+     * 64 bits are drawn first, so the hashes of boards which fit in a single long do not depend on MAX_BITS.
+     */
+    private static final long[][] ZOBRIST_KEYS = new long[3][MAX_BITS];
+    private static final long PLAYER_2_KEY;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x436f6e6e65637434L);
+        for (int player = 1; player <= 2; player++)
+            for (int bit = 0; bit < Long.SIZE; bit++)
+                ZOBRIST_KEYS[player][bit] = random.nextLong();
+        PLAYER_2_KEY = random.nextLong();
+        for (int player = 1; player <= 2; player++)
+            for (int bit = Long.SIZE; bit < MAX_BITS; bit++)
+                ZOBRIST_KEYS[player][bit] = random.nextLong();
+    }
+
     // All the directions in which a possible winning condition can lie.
     final Direction[] directions = { new Direction(1, 0),
                                      new Direction(0, 1),
                                      new Direction(1, 1),
                                      new Direction(1, -1) };
 
-    /* Each slot of the array can have one of 3 states:
-     *      - 0 -> the slot is unoccupied
-     *      - 1 -> the slot is occupied by a token from Player 1
-     *      - 2 -> the slot is occupied by a token from Player 2
-    */
-    private final int[][] board;
+    /* The board is stored as two bitboards, one per player. Each column takes up (rows + 1) consecutive bits, going
+     * from the bottom of the column upwards, and the extra bit on top of every column is always left empty so that
+     * shifting a line of chips never wraps around into the next column:
+     *
+     *      6 13 20 ...      <- always empty
+     *      5 12 19 ...      <- top row
+     *      ...
+     *      0  7 14 ...      <- bottom row
+     *
+     * (bit indices shown for a board with 6 rows)
+     *
+     * A set bit in player1Chips (player2Chips) means that the cell is occupied by a token from Player 1 (Player 2).
+     *
+     * Boards with more than 64 bits keep their bitboards in player1Words and player2Words instead, with the same
+     * layout spread over several longs (see MultiWordBitboard), and leave player1Chips and player2Chips at 0. Boards
+     * which fit in a single long leave the arrays null and take the single-word path everywhere.
+     */
+    private long player1Chips;
+    private long player2Chips;
+    private final long[] player1Words;
+    private final long[] player2Words;
+
+    // The number of chips in each column
+    private final int[] heights;
+
+    // Dimensions of the board
+    private final int columns;
+    private final int rows;
 
     // True if Player vs Computer, false if Player vs Player
     private final boolean computerPlayer;
@@ -44,24 +92,189 @@ public class Model {
     // or we have a draw)
     private int winner;
 
+    // Zobrist hash of the chips on the board and the player who has the current turn
+    private long hash;
+
+    // Zobrist hash of the board mirrored left to right, which has the same value and mirrored best moves
+    private long mirrorHash;
+
+    // Keeps the heuristic score of the board up to date as chips are dropped and removed
+    private final WindowEvaluator evaluator;
+
 
     // Constructors
 
     /**
      * Public constructor.
-     * Creates the empty 2D array with dimensions <code>width</code> x <code>height</code>, sets the mode
+     * Creates the empty board with dimensions <code>columns</code> x <code>rows</code>, sets the mode
      * (Player vs Player or Player vs Computer) of the game and the starting player
      * @param columns number of columns in the board
      * @param rows number of rows in the board
      * @param computerPlayer true if the player has chosen to play against the computer, false if the player has chosen
      *                       to play against another player
      * @param playerTurn the player who has the first move
+     * @throws IllegalArgumentException if the board is larger than <code>MAX_COLUMNS</code> x <code>MAX_ROWS</code>
      */
     public Model(int columns, int rows, boolean computerPlayer, int playerTurn) {
-        this.board = new int[rows][columns];
+        if (columns < 1 || rows < 1 || columns > MAX_COLUMNS || rows > MAX_ROWS)
+            throw new IllegalArgumentException("A " + columns + "x" + rows + " board is not supported, the largest " +
+                                               "is " + MAX_COLUMNS + "x" + MAX_ROWS);
+
+        boolean wide = columns * (rows + 1) > Long.SIZE;
+        this.player1Words = wide ? MultiWordBitboard.create(columns * (rows + 1)) : null;
+        this.player2Words = wide ? MultiWordBitboard.create(columns * (rows + 1)) : null;
+        this.columns = columns;
+        this.rows = rows;
+        this.heights = new int[columns];
         this.freeSpaces = rows * columns;
         this.computerPlayer = computerPlayer;
         this.playerTurn = playerTurn;
+        this.hash = playerTurn == 2 ? PLAYER_2_KEY : 0;
+        this.mirrorHash = hash;
+        this.evaluator = new WindowEvaluator(columns, rows);
+    }
+
+
+    /**
+     * Public constructor.
+     * Creates a board in the state of the given snapshot
+     * @param snapshot the state of the board
+     * @param computerPlayer true if the player has chosen to play against the computer, false if the player has chosen
+     *                       to play against another player
+     */
+    public Model(BoardSnapshot snapshot, boolean computerPlayer) {
+        this(snapshot.getColumns(), snapshot.getRows(), computerPlayer, snapshot.getPlayer());
+        load(snapshot);
+    }
+
+
+    /**
+     * Copy constructor.
+     * Creates an independent board in the same state as <code>other</code>
+     * @param other the board to copy
+     */
+    public Model(Model other) {
+        this.columns = other.columns;
+        this.rows = other.rows;
+        this.player1Chips = other.player1Chips;
+        this.player2Chips = other.player2Chips;
+        this.player1Words = other.player1Words == null ? null : other.player1Words.clone();
+        this.player2Words = other.player2Words == null ? null : other.player2Words.clone();
+        this.heights = other.heights.clone();
+        this.freeSpaces = other.freeSpaces;
+        this.computerPlayer = other.computerPlayer;
+        this.playerTurn = other.playerTurn;
+        this.winner = other.winner;
+        this.hash = other.hash;
+        this.mirrorHash = other.mirrorHash;
+        this.evaluator = new WindowEvaluator(other.evaluator);
+    }
+
+
+    // Snapshots
+
+    /**
+     * @return an immutable copy of the chips on the board and the player who has the current turn
+     */
+    public BoardSnapshot snapshot() {
+        if (player1Words != null)
+            return new BoardSnapshot(columns, rows, playerTurn, player1Words.clone(), player2Words.clone());
+        return new BoardSnapshot(columns, rows, playerTurn, player1Chips, player2Chips);
+    }
+
+
+    /**
+     * Computes the Zobrist hash of a board which fits in a single long, the same way <code>move</code> and
+     * <code>swapPlayer</code> update it
+     * @param playerTurn the player who has the current turn
+     * @param player1Chips the bitboard of Player 1
+     * @param player2Chips the bitboard of Player 2
+     * @return the hash <code>getHash</code> would return for the board
+     */
+    static long hash(int playerTurn, long player1Chips, long player2Chips) {
+        long hash = playerTurn == 2 ? PLAYER_2_KEY : 0;
+        for (long chips = player1Chips; chips != 0; chips &= chips - 1)
+            hash ^= ZOBRIST_KEYS[1][Long.numberOfTrailingZeros(chips)];
+        for (long chips = player2Chips; chips != 0; chips &= chips - 1)
+            hash ^= ZOBRIST_KEYS[2][Long.numberOfTrailingZeros(chips)];
+        return hash;
+    }
+
+
+    /**
+     * @param bitboard a bitboard of a board which fits in a single long
+     * @param columns number of columns in the board
+     * @param rows number of rows in the board
+     * @return the bitboard mirrored left to right
+     */
+    static long mirror(long bitboard, int columns, int rows) {
+        long columnBits = (1L << rows + 1) - 1;
+        long mirrored = 0;
+        for (int column = 0; column < columns; column++)
+            mirrored |= ((bitboard >>> column * (rows + 1)) & columnBits) << (columns - 1 - column) * (rows + 1);
+        return mirrored;
+    }
+
+
+    /**
+     * Computes the Zobrist hash of a board with multi-word bitboards
+     * @param playerTurn the player who has the current turn
+     * @param player1Words the bitboard of Player 1
+     * @param player2Words the bitboard of Player 2
+     * @return the hash <code>getHash</code> would return for the board
+     */
+    static long hash(int playerTurn, long[] player1Words, long[] player2Words) {
+        long hash = playerTurn == 2 ? PLAYER_2_KEY : 0;
+        for (int word = 0; word < player1Words.length; word++) {
+            for (long chips = player1Words[word]; chips != 0; chips &= chips - 1)
+                hash ^= ZOBRIST_KEYS[1][word * Long.SIZE + Long.numberOfTrailingZeros(chips)];
+            for (long chips = player2Words[word]; chips != 0; chips &= chips - 1)
+                hash ^= ZOBRIST_KEYS[2][word * Long.SIZE + Long.numberOfTrailingZeros(chips)];
+        }
+        return hash;
+    }
+
+
+    /**
+     * Replaces the state of the board with the given snapshot, without allocating a new board
+     * @param snapshot the snapshot to load
+     * @throws IllegalArgumentException if the snapshot was taken from a board with different dimensions
+     */
+    public void load(BoardSnapshot snapshot) {
+        if (snapshot.getColumns() != columns || snapshot.getRows() != rows)
+            throw new IllegalArgumentException("The snapshot is of a " + snapshot.getColumns() + "x" +
+                                               snapshot.getRows() + " board, not a " + columns + "x" + rows + " one");
+
+        if (player1Words != null) {
+            System.arraycopy(snapshot.getPlayer1Words(), 0, player1Words, 0, player1Words.length);
+            System.arraycopy(snapshot.getPlayer2Words(), 0, player2Words, 0, player2Words.length);
+        } else {
+            player1Chips = snapshot.getPlayer1Chips();
+            player2Chips = snapshot.getPlayer2Chips();
+        }
+        playerTurn = snapshot.getPlayer();
+        freeSpaces = rows * columns;
+        hash = playerTurn == 2 ? PLAYER_2_KEY : 0;
+        mirrorHash = hash;
+        evaluator.clear();
+
+        for (int column = 0; column < columns; column++) {
+            heights[column] = 0;
+            for (int height = 0; height < rows; height++) {
+                int player = get(rows - 1 - height, column);
+                if (player == 0)
+                    break;
+
+                int index = bit(height, column);
+                hash ^= ZOBRIST_KEYS[player][index];
+                mirrorHash ^= ZOBRIST_KEYS[player][bit(height, mirror(column))];
+                evaluator.add(index, player);
+                heights[column]++;
+            }
+            freeSpaces -= heights[column];
+        }
+
+        winner = hasFourInARow(1) ? 1 : hasFourInARow(2) ? 2 : 0;
     }
 
 
@@ -72,17 +285,92 @@ public class Model {
      * @param column index of a column in the board
      * @return value at position (<code>row</code>, <code>column</code>) in the board
      */
-    public int get(int row, int column) { return board[row][column]; }
+    public int get(int row, int column) {
+        if (player1Words != null) {
+            int index = bit(rows - 1 - row, column);
+            return MultiWordBitboard.isSet(player1Words, index) ? 1
+                 : MultiWordBitboard.isSet(player2Words, index) ? 2
+                 : 0;
+        }
+
+        long bit = 1L << bit(rows - 1 - row, column);
+
+        if ((player1Chips & bit) != 0)
+            return 1;
+        if ((player2Chips & bit) != 0)
+            return 2;
+        return 0;
+    }
 
     /**
      * @return number of columns in the board
      */
-    public int getWidth() { return board[0].length; }
+    public int getWidth() { return columns; }
 
     /**
      * @return number of rows in the board
      */
-    public int getHeight() { return board.length; }
+    public int getHeight() { return rows; }
+
+    /**
+     * @param column index of a column in the board
+     * @return the number of chips in the given column
+     */
+    public int getColumnHeight(int column) { return heights[column]; }
+
+    /**
+     * @param player the player whose chips are requested
+     * @return the bitboard of the cells occupied by <code>player</code>
+     * @throws IllegalStateException if the board does not fit in a single long
+     */
+    long getChips(int player) {
+        if (player1Words != null)
+            throw new IllegalStateException("A " + columns + "x" + rows + " board does not fit in a single long");
+        return player == 1 ? player1Chips : player2Chips;
+    }
+
+    /**
+     * @return true if the bitboards of the board fit in a single long each, so that <code>getChips</code> can be used
+     */
+    boolean fitsInLong() { return player1Words == null; }
+
+    /**
+     * @param height number of cells between the cell and the bottom of the board
+     * @param column index of a column in the board
+     * @return the index of the bit which represents the given cell in the bitboards
+     */
+    int bit(int height, int column) { return column * (rows + 1) + height; }
+
+    /**
+     * Checks if <code>player</code> has 4-in-a-row anywhere on the board by shifting their bitboard in each of the
+     * four directions and masking it with itself.
+     * @param player the player whose chips are checked
+     * @return true if the player has 4-in-a-row, false otherwise
+     */
+    public boolean hasFourInARow(int player) {
+        if (player1Words != null) {
+            long[] words = player == 1 ? player1Words : player2Words;
+            return MultiWordBitboard.hasFourInARow(words, 1) || MultiWordBitboard.hasFourInARow(words, rows + 1) ||
+                   MultiWordBitboard.hasFourInARow(words, rows) || MultiWordBitboard.hasFourInARow(words, rows + 2);
+        }
+
+        long chips = player == 1 ? player1Chips : player2Chips;
+
+        // vertical, horizontal, and the two diagonals
+        return hasFourInARow(chips, 1) || hasFourInARow(chips, rows + 1) ||
+               hasFourInARow(chips, rows) || hasFourInARow(chips, rows + 2);
+    }
+
+
+    /**
+     * @param chips a bitboard
+     * @param shift the distance between two neighbouring cells of a line in the bitboard
+     * @return true if the bitboard contains 4 set bits in a row at distance <code>shift</code> from each other
+     */
+    private static boolean hasFourInARow(long chips, int shift) {
+        long pairs = chips & (chips >>> shift);
+        return (pairs & (pairs >>> 2 * shift)) != 0;
+    }
 
     /**
      * @return true if the player has selected to play against the computer player, false otherwise
@@ -109,6 +397,86 @@ public class Model {
      */
     public int getWinner() { return winner; }
 
+    /**
+     * @return true if one of the players has won or the board is full, false otherwise
+     */
+    public boolean isGameOver() { return winner != 0 || freeSpaces == 0; }
+
+    /**
+     * @return the Zobrist hash of the current state of the board, including the player who has the current turn
+     */
+    public long getHash() { return hash; }
+
+    /**
+     * @return the Zobrist hash of the board mirrored left to right
+     */
+    public long getMirrorHash() { return mirrorHash; }
+
+    /**
+     * @return the Zobrist hash of the chips on the board, without the player who has the current turn
+     */
+    long getChipsHash() { return playerTurn == 2 ? hash ^ PLAYER_2_KEY : hash; }
+
+    /**
+     * @param player the player who owns the chip, or 0 for an empty cell
+     * @param height number of cells between the cell and the bottom of the board
+     * @param column index of a column in the board
+     * @return the part of <code>getChipsHash</code> which the cell contributes
+     */
+    long chipKey(int player, int height, int column) {
+        return player == 0 ? 0 : ZOBRIST_KEYS[player][bit(height, column)];
+    }
+
+    /**
+     * A board and its mirror image have the same score, so caches keyed by this hash hold one entry for both. A best
+     * move stored under this hash is a move of the canonical board, and has to be mirrored when
+     * <code>isCanonical</code> is false.
+     * @return the smaller of the hash of the board and the hash of its mirror image
+     */
+    public long getCanonicalHash() { return Math.min(hash, mirrorHash); }
+
+    /**
+     * @return true if <code>getCanonicalHash</code> is the hash of the board itself rather than of its mirror image
+     */
+    public boolean isCanonical() { return hash <= mirrorHash; }
+
+    /**
+     * @param column index of a column in the board
+     * @return the index of the column on the other side of the board
+     */
+    public int mirror(int column) { return columns - 1 - column; }
+
+    /**
+     * @return true if the board is its own mirror image, in which case the moves on one side of the center column are
+     * as good as their mirror images
+     */
+    public boolean isSymmetric() {
+        if (hash != mirrorHash)
+            return false;
+
+        for (int column = 0; column < columns / 2; column++) {
+            if (heights[column] != heights[mirror(column)])
+                return false;
+            for (int row = rows - heights[column]; row < rows; row++)
+                if (get(row, column) != get(row, mirror(column)))
+                    return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param player the player from whose point of view the board is scored
+     * @return the heuristic score of the board, kept up to date by <code>move</code> and <code>unmove</code>
+     */
+    public int getScore(int player) { return evaluator.getScore(player); }
+
+    /**
+     * @param player the player from whose point of view the board is scored
+     * @param weights the scores of the 4-cell windows
+     * @return the heuristic score of the board with the given weights
+     */
+    public int getScore(int player, HeuristicWeights weights) { return evaluator.getScore(player, weights); }
+
 
     // Modifying the board state
 
@@ -120,57 +488,82 @@ public class Model {
     /**
      * Switches the current player to the next player
      */
-    public void swapPlayer() { playerTurn = getOtherPlayer(); }
+    public void swapPlayer() {
+        playerTurn = getOtherPlayer();
+        hash ^= PLAYER_2_KEY;
+        mirrorHash ^= PLAYER_2_KEY;
+    }
 
 
     /**
      * Sets the free cell in the selected column with the highest row index to be occupied by the current player.
-     * If the selected column is already full, the returns false
+     * If the selected column is already full, the returns false.
+     * Since the game ends as soon as someone gets 4-in-a-row, a new win can only go through the chip that was just
+     * dropped, so only the current player's bitboard is checked and the winner is updated right away.
      * @param column index of the column in which the chip is dropped
      * @return true if the move is valid and has been executed, false if the chosen column is full and the move fails
      */
     public boolean move(int column) {
         // if the column is full, we can't drop a new chip
-        if (board[0][column] > 0)
+        if (heights[column] == rows)
             return false;
 
-        // find the lowest free row
-        int row = getHeight() - 1;
-        while (row >= 0 && board[row][column] > 0)
-            row--;
-
-        // drop a new chip in the board
-        board[row][column] = getPlayer();
+        // drop a new chip in the lowest free row
+        int index = bit(heights[column]++, column);
+        if (player1Words != null)
+            MultiWordBitboard.set(getPlayer() == 1 ? player1Words : player2Words, index);
+        else if (getPlayer() == 1)
+            player1Chips |= 1L << index;
+        else
+            player2Chips |= 1L << index;
+
+        hash ^= ZOBRIST_KEYS[getPlayer()][index];
+        mirrorHash ^= ZOBRIST_KEYS[getPlayer()][bit(heights[column] - 1, mirror(column))];
+        evaluator.add(index, getPlayer());
         freeSpaces--;
+
+        if (winner == 0 && hasFourInARow(getPlayer()))
+            winner = getPlayer();
         return true;
     }
 
 
     /**
      * Sets the occupied cell in the selected column with the lowest row index to be free. Does nothing if the column
-     * is empty.
+     * is empty. If there was a winner, it is cleared unless the remaining chips still contain 4-in-a-row.
      * @param column index of the column from which we are removing the chip
      */
     public void unmove(int column) {
         // if the column is empty, do nothing
-        if (board[getHeight() - 1][column] == 0)
+        if (heights[column] == 0)
             return;
 
-        // find the highest occupied row
-        int row = getHeight() - 1;
-        while (row >= 0 && board[row][column] > 0)
-            row--;
+        // remove the highest chip from the board
+        int index = bit(--heights[column], column);
+        int player = get(rows - 1 - heights[column], column);
+        if (player1Words != null)
+            MultiWordBitboard.clear(player == 1 ? player1Words : player2Words, index);
+        else if (player == 1)
+            player1Chips &= ~(1L << index);
+        else
+            player2Chips &= ~(1L << index);
+
+        hash ^= ZOBRIST_KEYS[player][index];
+        mirrorHash ^= ZOBRIST_KEYS[player][bit(heights[column], mirror(column))];
+        evaluator.remove(index, player);
 
-        // remove the chip from the board
-        board[row + 1][column] = 0;
         freeSpaces++;
+
+        if (winner != 0 && !hasFourInARow(winner))
+            winner = 0;
     }
 }
 
-
 /**
  * The <code>WinChecker</code> class extends <code>RecursiveTask</code> and implements a Divide and Conquer approach
- * to check if the win condition of the game has been reached (if the previous player has 4-in-a-row anywhere on the board)
+ * to check if the win condition of the game has been reached (if the previous player has 4-in-a-row anywhere on the board).
+ * The game loop no longer needs it, since <code>Model.move</code> keeps the winner up to date, but it is kept as a
+ * whole-board reference check.
  */
 class WinChecker extends RecursiveTask<Boolean> {
     private final Model board;
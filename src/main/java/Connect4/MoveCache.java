@@ -0,0 +1,424 @@
+package Connect4;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * The <code>MoveCache</code> class remembers the best moves found for boards across games, so that a board which
+ * many games reach, such as an opening, is only searched once. It is bounded, safe to use from any number of threads,
+ * and shared by all the searches of an <code>Engine</code> with <code>Engine.setMoveCache</code>.
+ *
+ * Entries are keyed by the canonical hash of the board, so a board and its mirror image share one entry, and by the
+ * limits of the search, since a deeper search may find a different move. If several threads ask for a board which is
+ * not cached at the same time, only the first one searches it, and the others wait for its result.
+ *
+ * The cache is split into segments, each guarded by its own lock, which evict entries with one of two policies:
+ *      - LRU       -> the least recently used entry is evicted
+ *      - TINY_LFU  -> W-TinyLFU: new entries go into a small LRU window, and an entry leaving the window only
+ *                     replaces the next victim of the main part if it has been asked for more often, according to a
+ *                     count-min sketch of recent requests. The main part keeps entries which have been hit twice
+ *                     apart from those hit once, so a burst of one-off boards cannot flush the popular ones.
+ */
+public class MoveCache {
+
+    // Fields
+
+    // Estimated memory used by one entry in bytes: the map node, the key with its limits and the cached result
+    public static final int ENTRY_BYTES = 160;
+
+    /**
+     * The ways the cache can choose the entry to evict
+     */
+    public enum Eviction { LRU, TINY_LFU }
+
+    private final Segment[] segments;
+
+    // Searches in progress, which later requests for the same board wait for
+    private final ConcurrentHashMap<Key, CompletableFuture<SearchResult>> inFlight = new ConcurrentHashMap<>();
+
+    private final long capacity;
+
+    // Counters
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * The key of an entry
+     * @param hash the canonical hash of the board
+     * @param limits the limits of the search
+     */
+    private record Key(long hash, SearchLimits limits) {}
+
+    /**
+     * A cached result, with the move oriented to the canonical board
+     * @param move index of the column of the best move
+     * @param score the score of the best move
+     * @param depth the depth the search reached
+     */
+    private record Entry(int move, int score, int depth) {}
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * The cache holds at most <code>maxEntries</code> entries, and at most as many as fit into <code>maxBytes</code>
+     * at <code>ENTRY_BYTES</code> each
+     * @param maxEntries the greatest number of entries
+     * @param maxBytes the greatest estimated memory used by the entries
+     * @param eviction how the entry to evict is chosen
+     * @throws IllegalArgumentException if the cache could not hold a single entry
+     */
+    public MoveCache(long maxEntries, long maxBytes, Eviction eviction) {
+        this.capacity = Math.min(maxEntries, maxBytes / ENTRY_BYTES);
+        if (capacity < 1)
+            throw new IllegalArgumentException("The cache must hold at least one entry");
+
+        // small caches are not split, so that the whole capacity is used before evicting
+        int count = capacity >= 1024 ? 16 : 1;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            int segmentCapacity = (int) Math.min(Integer.MAX_VALUE, (capacity + count - 1) / count);
+            segments[i] = new Segment(segmentCapacity, eviction);
+        }
+    }
+
+
+    // Getters
+
+    /**
+     * @return the greatest number of entries
+     */
+    public long getCapacity() { return capacity; }
+
+    /**
+     * @return the number of entries
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments)
+            synchronized (segment) {
+                size += segment.size();
+            }
+        return size;
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public long getHits() { return hits.sum(); }
+
+    /**
+     * @return the number of requests which had to search, not counting those which waited for another search
+     */
+    public long getMisses() { return misses.sum(); }
+
+    /**
+     * @return the number of requests which waited for the search of another request for the same board
+     */
+    public long getCoalesced() { return coalesced.sum(); }
+
+    /**
+     * @return the number of entries evicted to make room for others, or not admitted
+     */
+    public long getEvictions() { return evictions.sum(); }
+
+    /**
+     * @return the fraction of requests which did not search, whether they were hits or waited for another search
+     */
+    public double getHitRate() {
+        long saved = hits.sum() + coalesced.sum();
+        long total = saved + misses.sum();
+        return total == 0 ? 0 : (double) saved / total;
+    }
+
+
+    // Using the cache
+
+    /**
+     * Returns the cached result for a board, or searches it. If another thread is already searching the same board
+     * with the same limits, waits for its result instead of searching.
+     * @param board the board, which is not modified
+     * @param limits the limits of the search
+     * @param search computes the result for the board if it is not cached
+     * @return the result, whose statistics are empty if it comes from the cache
+     */
+    public SearchResult get(Model board, SearchLimits limits, Supplier<SearchResult> search) {
+        Key key = new Key(board.getCanonicalHash(), limits);
+        Segment segment = segmentFor(key);
+
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null) {
+            hits.increment();
+            return result(board, entry);
+        }
+
+        CompletableFuture<SearchResult> mine = new CompletableFuture<>();
+        CompletableFuture<SearchResult> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                SearchResult result = running.join();
+                return new SearchResult(ComputerPlayer.orient(board, result.move()), result.score(),
+                                        empty(result.stats().depthReached()));
+            } catch (CompletionException e) {
+                // the other search failed, search again
+                return search.get();
+            }
+        }
+
+        misses.increment();
+        try {
+            SearchResult result = search.get();
+            Entry found = new Entry(ComputerPlayer.orient(board, result.move()), result.score(),
+                                    result.stats().depthReached());
+            synchronized (segment) {
+                evictions.add(segment.put(key, found));
+            }
+            mine.complete(new SearchResult(found.move(), found.score(), result.stats()));
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+
+    /**
+     * Removes every entry. The counters are kept.
+     */
+    public void clear() {
+        for (Segment segment : segments)
+            synchronized (segment) {
+                segment.clear();
+            }
+    }
+
+
+    /**
+     * @param key the key of an entry
+     * @return the segment which holds the entry
+     */
+    private Segment segmentFor(Key key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        return segments[(int) (h >>> 60) & (segments.length - 1)];
+    }
+
+
+    /**
+     * @param board the board
+     * @param entry the cached result for the board
+     * @return the result, with the move oriented to the board
+     */
+    private static SearchResult result(Model board, Entry entry) {
+        return new SearchResult(ComputerPlayer.orient(board, entry.move()), entry.score(), empty(entry.depth()));
+    }
+
+
+    /**
+     * @param depth the depth of a cached result
+     * @return the statistics of a result which took no search
+     */
+    private static SearchStats empty(int depth) {
+        return new SearchStats(0, 0, 0, 0, 0, depth, Duration.ZERO);
+    }
+
+
+    /**
+     * A part of the cache, only used while holding its lock. With the LRU policy only the window is used, and it
+     * holds the whole capacity of the segment.
+     */
+    private static class Segment {
+
+        // The entries in access order, least recently used first
+        private final LinkedHashMap<Key, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Key, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Key, Entry> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final int windowCapacity;
+        private final int mainCapacity;
+        private final int protectedCapacity;
+
+        // Estimates how often each key has been asked for recently, null with the LRU policy
+        private final FrequencySketch sketch;
+
+        Segment(int capacity, Eviction eviction) {
+            if (eviction == Eviction.LRU) {
+                windowCapacity = capacity;
+                sketch = null;
+            } else {
+                windowCapacity = Math.max(1, capacity / 100);
+                sketch = new FrequencySketch(capacity);
+            }
+            mainCapacity = capacity - windowCapacity;
+            protectedCapacity = mainCapacity * 4 / 5;
+        }
+
+        int size() { return window.size() + probation.size() + protectedEntries.size(); }
+
+        void clear() {
+            window.clear();
+            probation.clear();
+            protectedEntries.clear();
+        }
+
+        /**
+         * @param key the key of an entry
+         * @return the entry, or null if it is not in the segment
+         */
+        Entry get(Key key) {
+            if (sketch != null)
+                sketch.increment(key.hashCode());
+
+            Entry entry = window.get(key);
+            if (entry != null)
+                return entry;
+            entry = protectedEntries.get(key);
+            if (entry != null)
+                return entry;
+
+            // a second hit promotes an entry from probation to the protected part
+            entry = probation.remove(key);
+            if (entry != null) {
+                protectedEntries.put(key, entry);
+                if (protectedEntries.size() > protectedCapacity) {
+                    Map.Entry<Key, Entry> demoted = removeEldest(protectedEntries);
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+            return entry;
+        }
+
+        /**
+         * Adds an entry, evicting others if the segment is full
+         * @param key the key of the entry
+         * @param entry the entry
+         * @return the number of entries evicted
+         */
+        int put(Key key, Entry entry) {
+            if (window.containsKey(key) || probation.containsKey(key) || protectedEntries.containsKey(key))
+                return 0;
+
+            window.put(key, entry);
+            if (window.size() <= windowCapacity)
+                return 0;
+
+            Map.Entry<Key, Entry> candidate = removeEldest(window);
+            if (mainCapacity == 0)
+                return 1;
+            if (probation.size() + protectedEntries.size() < mainCapacity) {
+                probation.put(candidate.getKey(), candidate.getValue());
+                return 0;
+            }
+
+            // the candidate from the window only gets in if it is asked for more often than the victim
+            Map.Entry<Key, Entry> victim = probation.isEmpty() ? eldest(protectedEntries) : eldest(probation);
+            if (sketch.frequency(candidate.getKey().hashCode()) > sketch.frequency(victim.getKey().hashCode())) {
+                (probation.isEmpty() ? protectedEntries : probation).remove(victim.getKey());
+                probation.put(candidate.getKey(), candidate.getValue());
+            }
+            return 1;
+        }
+
+        /**
+         * @param map an access-ordered map, which is not empty
+         * @return the least recently used entry of the map
+         */
+        private static Map.Entry<Key, Entry> eldest(LinkedHashMap<Key, Entry> map) {
+            return map.entrySet().iterator().next();
+        }
+
+        /**
+         * @param map an access-ordered map, which is not empty
+         * @return the least recently used entry of the map, which is removed from it
+         */
+        private static Map.Entry<Key, Entry> removeEldest(LinkedHashMap<Key, Entry> map) {
+            Iterator<Map.Entry<Key, Entry>> iterator = map.entrySet().iterator();
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            Map.Entry<Key, Entry> removed = Map.entry(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            return removed;
+        }
+    }
+
+
+    /**
+     * A count-min sketch of 4-bit counters: estimates how many times each key has been seen, never less than the
+     * true count. When the number of increments reaches ten times the capacity of the cache, every counter is halved,
+     * so old popularity fades away.
+     */
+    private static class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L };
+
+        // 16 counters of 4 bits in every long
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int increments;
+
+        FrequencySketch(int capacity) {
+            // about 16 counters per entry, so that the keys seen between two halvings rarely share counters
+            int words = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1);
+            this.table = new long[words];
+            this.mask = words * 16 - 1;
+            this.sampleSize = 10 * Math.max(1, capacity);
+        }
+
+        /**
+         * @param hash the hash code of a key
+         * @return the estimated number of times the key has been seen
+         */
+        int frequency(int hash) {
+            int frequency = 15;
+            for (long seed : SEEDS)
+                frequency = Math.min(frequency, counter(index(hash, seed)));
+            return frequency;
+        }
+
+        /**
+         * Counts one more sighting of a key
+         * @param hash the hash code of the key
+         */
+        void increment(int hash) {
+            for (long seed : SEEDS) {
+                int index = index(hash, seed);
+                if (counter(index) < 15)
+                    table[index >>> 4] += 1L << ((index & 15) << 2);
+            }
+            if (++increments >= sampleSize) {
+                increments = 0;
+                for (int i = 0; i < table.length; i++)
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+        }
+
+        private int index(int hash, long seed) {
+            // each row multiplies by its own odd constant, so keys which collide in one row rarely collide in another
+            long h = (hash ^ (hash >>> 16)) * (seed | 1);
+            h ^= h >>> 29;
+            h *= 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & mask;
+        }
+
+        private int counter(int index) {
+            return (int) (table[index >>> 4] >>> ((index & 15) << 2)) & 15;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package Connect4;
+
+
+/**
+ * The <code>MoveOrdering</code> enum lists the heuristics <code>ComputerPlayer</code> can use to decide in which order
+ * to try the moves at each node of the search. Alpha-beta pruning cuts off the most when the best move is tried
+ * first. Without any of them, columns are tried from left to right.
+ */
+public enum MoveOrdering {
+    // The best move stored in the transposition table for the board goes first
+    TABLE_MOVE,
+
+    // Columns are tried from the center outwards, since center columns are part of the most windows
+    CENTER_FIRST,
+
+    // The last two moves which caused a cutoff at the same depth of the tree are tried early
+    KILLER_MOVES,
+
+    // Columns which have caused many cutoffs anywhere in the tree are tried early
+    HISTORY
+}
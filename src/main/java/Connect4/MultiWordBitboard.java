@@ -0,0 +1,77 @@
+package Connect4;
+
+
+/**
+ * The <code>MultiWordBitboard</code> class holds the bitboard operations for boards which do not fit in a single
+ * <code>long</code>. The bits keep the layout used by <code>Model</code> (<code>rows + 1</code> bits per column, from
+ * the bottom upwards), split over an array of words: bit <code>i</code> is bit <code>i % 64</code> of word
+ * <code>i / 64</code>. Since the extra bit on top of every column is always empty, a line of chips shifted across a
+ * word boundary still never wraps around into the next column.
+ */
+final class MultiWordBitboard {
+
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private MultiWordBitboard() {}
+
+
+    /**
+     * @param bits the number of bits of the bitboard
+     * @return an empty bitboard with room for <code>bits</code> bits
+     */
+    static long[] create(int bits) { return new long[(bits + Long.SIZE - 1) / Long.SIZE]; }
+
+    /**
+     * @param words a bitboard
+     * @param bit the index of a bit
+     * @return true if the bit is set
+     */
+    static boolean isSet(long[] words, int bit) { return (words[bit >>> 6] & 1L << bit) != 0; }
+
+    /**
+     * @param words a bitboard
+     * @param bit the index of the bit to set
+     */
+    static void set(long[] words, int bit) { words[bit >>> 6] |= 1L << bit; }
+
+    /**
+     * @param words a bitboard
+     * @param bit the index of the bit to clear
+     */
+    static void clear(long[] words, int bit) { words[bit >>> 6] &= ~(1L << bit); }
+
+
+    /**
+     * @param words a bitboard
+     * @param shift the distance between two neighbouring cells of a line in the bitboard, less than 32
+     * @return true if the bitboard contains 4 set bits in a row at distance <code>shift</code> from each other
+     */
+    static boolean hasFourInARow(long[] words, int shift) {
+        // pairs = words & (words >>> shift), computed from the highest word down, so that the pairs of the word above
+        // are known when the current word is shifted by 2 * shift
+        long higherPairs = 0;
+        for (int i = words.length - 1; i >= 0; i--) {
+            long pairs = words[i] & shiftedWord(words, i, shift);
+            long shiftedPairs = (pairs >>> 2 * shift) | (higherPairs << Long.SIZE - 2 * shift);
+            if ((pairs & shiftedPairs) != 0)
+                return true;
+            higherPairs = pairs;
+        }
+        return false;
+    }
+
+
+    /**
+     * @param words a bitboard
+     * @param i the index of a word
+     * @param shift how many bits to shift by, between 1 and 63
+     * @return word <code>i</code> of the bitboard shifted right by <code>shift</code> bits
+     */
+    private static long shiftedWord(long[] words, int i, int shift) {
+        long word = words[i] >>> shift;
+        if (i + 1 < words.length)
+            word |= words[i + 1] << Long.SIZE - shift;
+        return word;
+    }
+}
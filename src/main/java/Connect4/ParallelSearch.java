@@ -0,0 +1,454 @@
+package Connect4;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The <code>ParallelSearch</code> class computes the best move on several threads, using the Young Brothers Wait
+ * approach: at every node near the root, the first move is searched on its own to get a good bound, and then the
+ * remaining moves are searched in parallel on a <code>ForkJoinPool</code>. The bound of the node is shared between its
+ * parallel children through an atomic integer. Each task works on its own copy of the board and all of them share one
+ * transposition table.
+ */
+public class ParallelSearch {
+
+    // Fields
+
+    // Nodes further than this many moves from the root are searched sequentially
+    private static final int DEFAULT_SPLIT_DEPTH = 2;
+
+    private final ForkJoinPool pool;
+
+    private final TranspositionTable table;
+
+    private final int splitDepth;
+
+    // Counters of the current search, added to by every worker when it finishes
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder leafEvaluations = new LongAdder();
+    private final LongAdder betaCutoffs = new LongAdder();
+    private final LongAdder firstMoveCutoffs = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+
+    // The statistics of the last search
+    private SearchStats lastStats;
+
+    // Incremented at the start of every search, so that the workers know when to forget their move ordering
+    private int searchNumber;
+
+    // The number of free spaces at the root of the current search
+    private int rootFreeSpaces;
+
+    // The sequential player of each pool thread, reused for every board the thread searches sequentially
+    private final ThreadLocal<Worker> workers = new ThreadLocal<>();
+
+
+    /**
+     * A sequential player owned by one thread, and the search it last searched for
+     */
+    private static final class Worker {
+        final ComputerPlayer player;
+        final int columns;
+        final int rows;
+        int searchNumber = -1;
+
+        Worker(ComputerPlayer player, int columns, int rows) {
+            this.player = player;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * @param threads the number of threads which search in parallel
+     * @param tableSizeInMegabytes the memory the shared transposition table may use, in MB
+     */
+    public ParallelSearch(int threads, int tableSizeInMegabytes) {
+        this(threads, tableSizeInMegabytes, DEFAULT_SPLIT_DEPTH);
+    }
+
+
+    /**
+     * Public constructor.
+     * @param threads the number of threads which search in parallel
+     * @param tableSizeInMegabytes the memory the shared transposition table may use, in MB
+     * @param splitDepth how many moves from the root the search may still be split between threads
+     */
+    public ParallelSearch(int threads, int tableSizeInMegabytes, int splitDepth) {
+        this.pool = new ForkJoinPool(threads);
+        this.table = new TranspositionTable(tableSizeInMegabytes);
+        this.splitDepth = splitDepth;
+    }
+
+
+    // Getters
+
+    /**
+     * @return the number of threads which search in parallel
+     */
+    public int getThreads() { return pool.getParallelism(); }
+
+    /**
+     * @return the transposition table shared by all the threads
+     */
+    public TranspositionTable getTranspositionTable() { return table; }
+
+    /**
+     * @return the statistics of the last search, summed over all the threads, or null if there has been none
+     */
+    public SearchStats getLastSearchStats() { return lastStats; }
+
+
+    // Searching
+
+    /**
+     * Computes the best move for the current board with a search of fixed depth. The board is not modified.
+     * @param board reference to the Model
+     * @param depth how many moves ahead to search
+     * @return index of the column of the best move
+     */
+    public int getMove(Model board, int depth) {
+        long start = startSearch();
+        int move = searchRoot(board, depth, -1, Long.MAX_VALUE, new AtomicBoolean());
+        finishSearch(depth, start);
+        return move;
+    }
+
+
+    /**
+     * Computes the best move for the current board using iterative deepening, like
+     * <code>ComputerPlayer.getMove(Duration)</code>, but with every iteration searched in parallel. The board is not
+     * modified.
+     * @param board reference to the Model
+     * @param budget how long the search may take
+     * @return index of the column of the best move
+     */
+    public int getMove(Model board, Duration budget) {
+        long deadline = System.nanoTime() + budget.toNanos();
+        long start = startSearch();
+        int completedDepth = 0;
+
+        int bestMove = -1;
+        for (int col = 0; col < board.getWidth() && bestMove < 0; col++)
+            if (board.getColumnHeight(col) < board.getHeight())
+                bestMove = col;
+
+        for (int depth = 1; depth <= board.getFreeSpaces(); depth++) {
+            AtomicBoolean aborted = new AtomicBoolean();
+            int move = searchRoot(board, depth, bestMove, deadline, aborted);
+            if (aborted.get())
+                break;
+
+            bestMove = move;
+            completedDepth = depth;
+            if (System.nanoTime() >= deadline)
+                break;
+        }
+
+        finishSearch(completedDepth, start);
+        return bestMove;
+    }
+
+
+    /**
+     * Resets the counters before a new search
+     * @return System.nanoTime() at the start of the search
+     */
+    private long startSearch() {
+        table.newSearch();
+        searchNumber++;
+        nodes.reset();
+        leafEvaluations.reset();
+        betaCutoffs.reset();
+        firstMoveCutoffs.reset();
+        tableHits.reset();
+        return System.nanoTime();
+    }
+
+
+    /**
+     * Collects the counters of all the workers into <code>lastStats</code>
+     * @param depthReached the depth of the last completed iteration
+     * @param start System.nanoTime() at the start of the search
+     */
+    private void finishSearch(int depthReached, long start) {
+        lastStats = new SearchStats(nodes.sum(), leafEvaluations.sum(), betaCutoffs.sum(), firstMoveCutoffs.sum(),
+                                    tableHits.sum(), depthReached, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+
+    /**
+     * Prints a speedup report: the time needed to search a fixed set of boards with 1, 2, 4, ... threads, up to the
+     * number of available processors, and the speedup compared to 1 thread.
+     * Launched with <code>mvn exec:java -Dexec.mainClass=Connect4.ParallelSearch -Dexec.args="depth"</code>.
+     * @param args the search depth (optional, 10 by default)
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        // opening, early middle game and middle game boards, as sequences of columns
+        int[][] games = { {}, { 3, 3, 2, 4 }, { 3, 2, 3, 3, 4, 1, 2, 4, 5, 5 } };
+
+        System.out.println("Depth " + depth + ", " + processors + " available processors");
+        System.out.println("threads     time (ms)   speedup");
+
+        double baseline = 0;
+        for (int threads = 1; threads <= processors; threads = threads < processors ? Math.min(threads * 2, processors)
+                                                                                   : threads + 1) {
+            ParallelSearch search = new ParallelSearch(threads, ComputerPlayer.DEFAULT_TABLE_SIZE);
+            long start = System.nanoTime();
+
+            for (int[] game : games) {
+                Model board = new Model(7, 6, true, 1);
+                for (int column : game) {
+                    board.move(column);
+                    board.swapPlayer();
+                }
+                search.getTranspositionTable().clear();
+                search.getMove(board, depth);
+            }
+
+            double time = (System.nanoTime() - start) / 1e6;
+            if (threads == 1)
+                baseline = time;
+
+            System.out.printf("%7d %13.1f %9.2f%n", threads, time, baseline / time);
+            search.shutdown();
+        }
+    }
+
+
+    /**
+     * Shuts down the threads of the search
+     */
+    public void shutdown() { pool.shutdown(); }
+
+
+    /**
+     * Splits the root between the threads and finds the best move
+     * @param board reference to the Model
+     * @param depth how many moves ahead to search
+     * @param firstMove the column to search first, or -1 to use the move from the transposition table
+     * @param deadline System.nanoTime() after which the search must stop
+     * @param aborted set if any part of the search runs out of time
+     * @return index of the column of the best move
+     */
+    private int searchRoot(Model board, int depth, int firstMove, long deadline, AtomicBoolean aborted) {
+        rootFreeSpaces = board.getFreeSpaces();
+        SearchTask root = new SearchTask(new Model(board), board.getPlayer(), depth, -1000, 1000, 0, firstMove,
+                                         deadline, aborted, null);
+        pool.invoke(root);
+        return root.bestColumn;
+    }
+
+
+    /**
+     * The <code>SearchTask</code> class searches one node of the tree. Close to the root, it searches its first child
+     * itself and then forks a task for each of the remaining children. Further down, it hands the node over to a
+     * sequential <code>ComputerPlayer</code>.
+     */
+    private final class SearchTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Model board;
+        private final int player;
+        private final int depth;
+        private int alpha;
+        private int beta;
+        private final int ply;
+        private final int firstMove;
+        private final long deadline;
+        private final AtomicBoolean aborted;
+
+        // The bound of the parent which is being improved by this task and its siblings, null for the eldest child
+        private final AtomicInteger parentBound;
+
+        // The column of the move which leads from the parent to this node
+        private int column = -1;
+
+        // The best move found at this node
+        private int bestColumn = -1;
+
+
+        /**
+         * Constructor.
+         * @param board a copy of the board owned by this task
+         * @param player the player the search is searching for
+         * @param depth how many more moves to search
+         * @param alpha the best score the maximizing player can definitely achieve
+         * @param beta the best score the minimizing player can definitely achieve
+         * @param ply the number of moves between the root and this node
+         * @param firstMove the column to search first, or -1 to use the move from the transposition table
+         * @param deadline System.nanoTime() after which the search must stop
+         * @param aborted set if any part of the search runs out of time
+         * @param parentBound the shared bound of the parent node, read when the task starts
+         */
+        SearchTask(Model board, int player, int depth, int alpha, int beta, int ply, int firstMove, long deadline,
+                   AtomicBoolean aborted, AtomicInteger parentBound) {
+            this.board = board;
+            this.player = player;
+            this.depth = depth;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.ply = ply;
+            this.firstMove = firstMove;
+            this.deadline = deadline;
+            this.aborted = aborted;
+            this.parentBound = parentBound;
+        }
+
+
+        /**
+         * @return the sequential player of the current thread, whose move ordering is reset once per search
+         */
+        private ComputerPlayer worker() {
+            Worker worker = workers.get();
+            if (worker == null || worker.columns != board.getWidth() || worker.rows != board.getHeight()) {
+                worker = new Worker(new ComputerPlayer(board, table), board.getWidth(), board.getHeight());
+                workers.set(worker);
+            }
+            if (worker.searchNumber != searchNumber) {
+                worker.player.resetOrdering(rootFreeSpaces);
+                worker.searchNumber = searchNumber;
+            }
+            return worker.player;
+        }
+
+
+        /**
+         * Makes a copy of this task's board with one more chip in <code>column</code>
+         * @param column index of the column of the move
+         * @return the new board, or null if the column is full
+         */
+        private Model child(int column) {
+            Model child = new Model(board);
+            if (!child.move(column))
+                return null;
+            child.swapPlayer();
+            return child;
+        }
+
+
+        @Override
+        protected Integer compute() {
+            int value = search();
+            publish(value);
+            return value;
+        }
+
+
+        /**
+         * Searches the board of this task
+         * @return the score of the board
+         */
+        private int search() {
+            // a sibling may have already tightened the window of the parent
+            if (parentBound != null) {
+                if (board.getPlayer() == player)
+                    beta = Math.min(beta, parentBound.get());
+                else
+                    alpha = Math.max(alpha, parentBound.get());
+
+                // the parent has already been cut off, so this score will be ignored
+                if (alpha >= beta)
+                    return board.getPlayer() == player ? beta : alpha;
+            }
+
+            if (aborted.get())
+                return 0;
+
+            if (board.isGameOver() || (ply > 0 && (ply >= splitDepth || depth <= 1))) {
+                ComputerPlayer worker = worker();
+                int value = worker.search(board, player, depth, alpha, beta, deadline);
+                if (worker.isAborted())
+                    aborted.set(true);
+
+                SearchStats stats = worker.getStats(depth, 0);
+                nodes.add(stats.nodes());
+                leafEvaluations.add(stats.leafEvaluations());
+                betaCutoffs.add(stats.betaCutoffs());
+                firstMoveCutoffs.add(stats.firstMoveCutoffs());
+                tableHits.add(stats.tableHits());
+                return value;
+            }
+
+            boolean maximizing = board.getPlayer() == player;
+
+            // the move from the table (or the one given by the caller) is the eldest brother
+            int eldest = firstMove;
+            if (eldest < 0) {
+                long entry = table.probe(ComputerPlayer.tableKey(board, player));
+                eldest = entry != 0 ? ComputerPlayer.orient(board, TranspositionTable.move(entry)) : -1;
+            }
+            if (eldest < 0 || board.getColumnHeight(eldest) == board.getHeight())
+                for (eldest = 0; board.getColumnHeight(eldest) == board.getHeight(); eldest++);
+
+            // on a symmetric root, only the left half and the center column are searched
+            boolean symmetric = ply == 0 && board.isSymmetric();
+            if (symmetric && eldest > board.mirror(eldest))
+                eldest = board.mirror(eldest);
+
+            int bestValue = new SearchTask(child(eldest), player, depth - 1, alpha, beta, ply + 1, -1, deadline,
+                                           aborted, null).compute();
+            bestColumn = eldest;
+
+            if (maximizing ? bestValue >= beta : bestValue <= alpha)
+                return bestValue;
+
+            // the younger brothers share the bound set by the eldest one
+            AtomicInteger bound = new AtomicInteger(maximizing ? Math.max(alpha, bestValue)
+                                                               : Math.min(beta, bestValue));
+            List<SearchTask> brothers = new ArrayList<>();
+            for (int col = 0; col < board.getWidth(); col++) {
+                Model child = col == eldest || (symmetric && col > board.mirror(col)) ? null : child(col);
+                if (child != null) {
+                    SearchTask brother = new SearchTask(child, player, depth - 1, alpha, beta, ply + 1, -1,
+                                                        deadline, aborted, bound);
+                    brother.column = col;
+                    brothers.add(brother);
+                }
+            }
+
+            for (SearchTask brother : ForkJoinTask.invokeAll(brothers)) {
+                int value = brother.join();
+
+                // a score outside the window the brother was searched with is only a bound, and some other brother
+                // (or an ancestor) has a score at least as good
+                boolean exact = maximizing ? value > brother.alpha : value < brother.beta;
+                if (exact && (maximizing ? value > bestValue : value < bestValue)) {
+                    bestValue = value;
+                    bestColumn = brother.column;
+                }
+            }
+
+            return bestValue;
+        }
+
+
+        /**
+         * Updates the bound shared with the siblings with the result of this task
+         * @param value the score of this task's board
+         */
+        private void publish(int value) {
+            if (parentBound == null)
+                return;
+            if (board.getPlayer() == player)
+                parentBound.accumulateAndGet(value, Math::min);
+            else
+                parentBound.accumulateAndGet(value, Math::max);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package Connect4;
+
+import java.util.Arrays;
+
+
+/**
+ * The <code>Ponderer</code> class lets the computer think on the opponent's time. While the opponent chooses a move,
+ * a background thread searches the computer's answer to each of the opponent's possible moves, with iterative
+ * deepening: every move is searched to depth 1, then to depth 2, and so on, starting each round with the move the
+ * opponent is most likely to play. The searches share the computer's transposition table, so even the answers which
+ * are not finished leave it warm for the real search. The pondering searches do not start new generations of the
+ * table, which would make the entries of the last real search look old; the next real search starts one.
+ * Once the opponent has moved, <code>stop</code> cancels the pondering and returns the answer to the move which was
+ * actually played, if one was found.
+ */
+public class Ponderer {
+
+    // Fields
+
+    // A copy of the board, with the opponent to move
+    private final Model board;
+
+    // Searches the answers, on the copy of the board
+    private final ComputerPlayer computerPlayer;
+
+    // The order in which the opponent's moves are pondered, most likely first
+    private final int[] candidates;
+
+    // For each of the opponent's moves, the deepest completed answer, or null
+    private final SearchResult[] answers;
+
+    private final Thread thread;
+
+    private volatile boolean stopped;
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * @param board the board, with the opponent to move, which is copied and not modified
+     * @param table the transposition table of the computer, whose search for the best answer the pondering prepares
+     */
+    public Ponderer(Model board, TranspositionTable table) {
+        this.board = new Model(board);
+        this.computerPlayer = new ComputerPlayer(this.board, table);
+        computerPlayer.setAgesTable(false);
+        this.answers = new SearchResult[board.getWidth()];
+        this.candidates = candidates(table);
+
+        this.thread = new Thread(this::ponder, "ponderer");
+        thread.setDaemon(true);
+    }
+
+
+    /**
+     * Lists the opponent's legal moves, starting with the one the last search expected the opponent to play and then
+     * from the center outwards
+     * @param table the transposition table of the computer
+     * @return the columns, in the order they should be pondered
+     */
+    private int[] candidates(TranspositionTable table) {
+        // the computer's searches store the opponent's best move at this board, from the computer's point of view
+        long entry = table.probe(ComputerPlayer.tableKey(board, board.getOtherPlayer()));
+        int expected = entry != 0 ? ComputerPlayer.orient(board, TranspositionTable.move(entry)) : -1;
+
+        int width = board.getWidth();
+        int[] order = new int[width];
+        int count = 0;
+        if (expected >= 0 && board.getColumnHeight(expected) < board.getHeight())
+            order[count++] = expected;
+        for (int i = 0; i < width; i++) {
+            int column = width / 2 + (i % 2 == 0 ? i / 2 : -(i + 1) / 2);
+            if (column != expected && board.getColumnHeight(column) < board.getHeight())
+                order[count++] = column;
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+
+    // Pondering
+
+    /**
+     * Starts pondering on a background thread
+     */
+    public void start() { thread.start(); }
+
+
+    /**
+     * Stops pondering and waits for the background thread to finish
+     * @param column index of the column the opponent played
+     * @return the deepest completed answer to that move, or null if there is none
+     */
+    public SearchResult stop(int column) {
+        stopped = true;
+        computerPlayer.stop();
+
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        return column >= 0 && column < answers.length ? answers[column] : null;
+    }
+
+
+    /**
+     * Searches the answers to all the opponent's moves one depth at a time, until stopped or until every answer has
+     * been searched to the end of the game
+     */
+    private void ponder() {
+        for (int depth = 1; depth < board.getFreeSpaces(); depth++) {
+            for (int column : candidates) {
+                board.move(column);
+                if (!board.isGameOver()) {
+                    board.swapPlayer();
+                    SearchResult answer = computerPlayer.search(depth);
+                    if (!computerPlayer.isAborted())
+                        answers[column] = answer;
+                    board.swapPlayer();
+                }
+                board.unmove(column);
+
+                if (stopped)
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package Connect4;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+
+/**
+ * The <code>PositionDatabase</code> class is a read-only table of precomputed results (score, best move and search
+ * depth) for a set of boards, such as an opening book or an endgame database. It is stored in a binary file which is
+ * memory-mapped when it is opened: lookups are binary searches directly over the mapped file, so opening a database
+ * takes constant time and its contents are never copied onto the heap. A board and its mirror image share one entry.
+ *
+ * File layout (big-endian):
+ *      - int      -> magic number "C4DB"
+ *      - byte     -> format version
+ *      - byte     -> key type: <code>KEY_ZOBRIST</code> or <code>KEY_BITBOARD</code>
+ *      - byte     -> number of columns
+ *      - byte     -> number of rows
+ *      - byte     -> the largest number of chips of a board in the database
+ *      - 3 bytes  -> unused
+ *      - int      -> number of boards n
+ *      - n longs  -> the keys of the boards, sorted as unsigned numbers
+ *      - n ints   -> the result for each board, in the same order: bits 0-15 hold the score, bits 16-23 the best move
+ *                    + 1 (0 if there is none) and bits 24-31 the depth of the search (255 for exact scores)
+ */
+public class PositionDatabase {
+
+    // Fields
+
+    // The key of a board is Model.getCanonicalHash(), and scores come from ComputerPlayer's heuristic search. Best
+    // moves are moves of the canonical board, see ComputerPlayer.orient.
+    public static final int KEY_ZOBRIST = 0;
+
+    // The key of a board is the bitboard of the player to move plus the bitboard of all the chips, which is different
+    // for every board, or the same key of its mirror image if that is smaller. Scores are exact scores from the Solver.
+    public static final int KEY_BITBOARD = 1;
+
+    // Depth stored for exact scores
+    public static final int EXACT_DEPTH = 255;
+
+    private static final int MAGIC = 0x43344442;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+
+    private final int keyType;
+    private final int columns;
+    private final int rows;
+    private final int maxPly;
+
+    private final LongBuffer keys;
+    private final IntBuffer results;
+
+
+    // Constructors
+
+    /**
+     * Private constructor, databases are opened with <code>open</code>.
+     * @param file the mapped contents of the database file
+     * @throws IOException if the file is not a position database
+     */
+    private PositionDatabase(MappedByteBuffer file) throws IOException {
+        if (file.limit() < HEADER_SIZE || file.getInt(0) != MAGIC)
+            throw new IOException("Not a position database file");
+        if (file.get(4) != VERSION)
+            throw new IOException("Unsupported position database version " + file.get(4));
+
+        this.keyType = file.get(5);
+        this.columns = file.get(6);
+        this.rows = file.get(7);
+        this.maxPly = file.get(8);
+
+        int count = file.getInt(12);
+        if (file.limit() != HEADER_SIZE + (long) count * (Long.BYTES + Integer.BYTES))
+            throw new IOException("The position database file is truncated");
+
+        int resultsOffset = HEADER_SIZE + count * Long.BYTES;
+        this.keys = file.slice(HEADER_SIZE, count * Long.BYTES).order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+        this.results = file.slice(resultsOffset, count * Integer.BYTES).order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+    }
+
+
+    /**
+     * Memory-maps a position database file
+     * @param path the path to the database file
+     * @return the database
+     * @throws IOException if the file cannot be read or is not a position database
+     */
+    public static PositionDatabase open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new PositionDatabase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+
+    // Getters
+
+    /**
+     * @return the kind of keys the database uses: <code>KEY_ZOBRIST</code> or <code>KEY_BITBOARD</code>
+     */
+    public int getKeyType() { return keyType; }
+
+    /**
+     * @return number of columns of the boards in the database
+     */
+    public int getColumns() { return columns; }
+
+    /**
+     * @return number of rows of the boards in the database
+     */
+    public int getRows() { return rows; }
+
+    /**
+     * @return the largest number of chips of a board in the database
+     */
+    public int getMaxPly() { return maxPly; }
+
+    /**
+     * @return the number of boards in the database
+     */
+    public int size() { return keys.limit(); }
+
+
+    // Lookups
+
+    /**
+     * Looks up a board with a binary search over the mapped keys
+     * @param key the key of the board
+     * @return the index of the board in the database, or -1 if it is not in the database
+     */
+    public int find(long key) {
+        int low = 0;
+        int high = keys.limit() - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = Long.compareUnsigned(keys.get(middle), key);
+            if (comparison < 0)
+                low = middle + 1;
+            else if (comparison > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param index the index of a board, returned by <code>find</code>
+     * @return the score of the board from the point of view of the player to move
+     */
+    public int getScore(int index) { return (short) results.get(index); }
+
+    /**
+     * @param index the index of a board, returned by <code>find</code>
+     * @return index of the column of the best move, or -1 if the database does not store it
+     */
+    public int getMove(int index) { return ((results.get(index) >>> 16) & 0xFF) - 1; }
+
+    /**
+     * @param index the index of a board, returned by <code>find</code>
+     * @return the depth of the search which produced the result, <code>EXACT_DEPTH</code> for exact scores
+     */
+    public int getDepth(int index) { return results.get(index) >>> 24; }
+
+
+    // Writing databases
+
+    /**
+     * Writes a position database file. The entries do not need to be sorted.
+     * @param path the path of the database file to write
+     * @param keyType the kind of keys: <code>KEY_ZOBRIST</code> or <code>KEY_BITBOARD</code>
+     * @param columns number of columns of the boards
+     * @param rows number of rows of the boards
+     * @param maxPly the largest number of chips of a board in the database
+     * @param keys the key of each board, without duplicates
+     * @param scores the score of each board
+     * @param moves the best move of each board, or -1
+     * @param depths the depth of the search for each board
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, int keyType, int columns, int rows, int maxPly,
+                             long[] keys, int[] scores, int[] moves, int[] depths) throws IOException {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparing(i -> keys[i], Long::compareUnsigned));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(keyType);
+            out.writeByte(columns);
+            out.writeByte(rows);
+            out.writeByte(maxPly);
+            out.write(new byte[3]);
+            out.writeInt(keys.length);
+
+            for (int i : order)
+                out.writeLong(keys[i]);
+            for (int i : order)
+                out.writeInt((Math.min(depths[i], EXACT_DEPTH) << 24) | ((moves[i] + 1) << 16) | (scores[i] & 0xFFFF));
+        }
+    }
+
+
+    /**
+     * Generates an opening book: the exact score of every board with at most <code>maxPly</code> chips, keyed with
+     * <code>KEY_BITBOARD</code>. Best moves are not stored, since the scores of the following boards are in the book.
+     * @param path the path of the database file to write
+     * @param columns number of columns of the boards
+     * @param rows number of rows of the boards
+     * @param maxPly the largest number of chips of a board in the book
+     * @param solver the solver used to score the boards
+     * @throws IOException if the file cannot be written
+     */
+    public static void generateBook(Path path, int columns, int rows, int maxPly, Solver solver) throws IOException {
+        Map<Long, int[]> results = new LinkedHashMap<>();
+        collect(new Model(columns, rows, false, 1), maxPly, KEY_BITBOARD, results, board ->
+                new int[] { solver.solve(board), -1, EXACT_DEPTH });
+        write(path, KEY_BITBOARD, columns, rows, maxPly, results);
+    }
+
+
+    /**
+     * Generates a database of the moves <code>ComputerPlayer</code> plays: the result of a search to
+     * <code>depth</code> for every board with at most <code>maxPly</code> chips, keyed with <code>KEY_ZOBRIST</code>
+     * @param path the path of the database file to write
+     * @param columns number of columns of the boards
+     * @param rows number of rows of the boards
+     * @param maxPly the largest number of chips of a board in the database
+     * @param depth how many moves ahead to search from each board
+     * @throws IOException if the file cannot be written
+     */
+    public static void generateMoves(Path path, int columns, int rows, int maxPly, int depth) throws IOException {
+        ComputerPlayer computerPlayer = new ComputerPlayer(new Model(columns, rows, true, 1), 64);
+        Map<Long, int[]> results = new LinkedHashMap<>();
+        collect(new Model(columns, rows, true, 1), maxPly, KEY_ZOBRIST, results, board -> {
+            computerPlayer.getBoard().load(board.snapshot());
+            SearchResult result = computerPlayer.search(depth);
+            return new int[] { result.score(), ComputerPlayer.orient(board, result.move()), depth };
+        });
+        write(path, KEY_ZOBRIST, columns, rows, maxPly, results);
+    }
+
+
+    /**
+     * Visits every board reachable from <code>board</code> with at most <code>maxPly</code> chips in total, and scores
+     * the ones which have not been seen yet
+     * @param board the current board
+     * @param maxPly the largest number of chips of a board in the database
+     * @param keyType the kind of keys to use
+     * @param results the score, best move and depth of the boards found so far, by key
+     * @param scorer computes the score, best move and depth of a board
+     */
+    private static void collect(Model board, int maxPly, int keyType, Map<Long, int[]> results,
+                                Function<Model, int[]> scorer) {
+        if (board.isGameOver())
+            return;
+
+        long key = keyType == KEY_ZOBRIST ? board.getCanonicalHash() : bitboardKey(board);
+        if (results.containsKey(key))
+            return;
+        results.put(key, scorer.apply(board));
+
+        if (board.getWidth() * board.getHeight() - board.getFreeSpaces() == maxPly)
+            return;
+
+        for (int column = 0; column < board.getWidth(); column++) {
+            if (board.move(column)) {
+                board.swapPlayer();
+                collect(board, maxPly, keyType, results, scorer);
+                board.swapPlayer();
+                board.unmove(column);
+            }
+        }
+    }
+
+
+    /**
+     * Writes the results collected by <code>collect</code> to a database file
+     * @param path the path of the database file to write
+     * @param keyType the kind of keys: <code>KEY_ZOBRIST</code> or <code>KEY_BITBOARD</code>
+     * @param columns number of columns of the boards
+     * @param rows number of rows of the boards
+     * @param maxPly the largest number of chips of a board in the database
+     * @param results the score, best move and depth of each board, by key
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(Path path, int keyType, int columns, int rows, int maxPly, Map<Long, int[]> results)
+            throws IOException {
+        long[] keys = new long[results.size()];
+        int[] scores = new int[keys.length];
+        int[] moves = new int[keys.length];
+        int[] depths = new int[keys.length];
+
+        int i = 0;
+        for (Map.Entry<Long, int[]> result : results.entrySet()) {
+            keys[i] = result.getKey();
+            scores[i] = result.getValue()[0];
+            moves[i] = result.getValue()[1];
+            depths[i] = result.getValue()[2];
+            i++;
+        }
+        write(path, keyType, columns, rows, maxPly, keys, scores, moves, depths);
+    }
+
+
+    /**
+     * @param board a board
+     * @return the key of the board in a database of type <code>KEY_BITBOARD</code>
+     */
+    static long bitboardKey(Model board) {
+        long key = board.getChips(board.getPlayer()) + (board.getChips(1) | board.getChips(2));
+        return Math.min(key, Model.mirror(key, board.getWidth(), board.getHeight()));
+    }
+
+
+    /**
+     * Generates a position database for the standard 7x6 board.
+     * Launched with <code>mvn exec:java -Dexec.mainClass=Connect4.PositionDatabase -Dexec.args="kind file plies
+     * depth"</code>, where kind is <code>book</code> for exact scores from the Solver or <code>moves</code> for the
+     * moves of a ComputerPlayer searching to the given depth.
+     * @param args the kind of database, the path of the file, the largest number of chips of a board in the database
+     * and the search depth
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        boolean book = args.length == 0 || args[0].equals("book");
+        Path path = Path.of(args.length > 1 ? args[1] : book ? "connect4-book.bin" : "connect4-moves.bin");
+        int maxPly = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        long start = System.nanoTime();
+        if (book)
+            generateBook(path, 7, 6, maxPly, new Solver(7, 6, 64, null));
+        else
+            generateMoves(path, 7, 6, maxPly, depth);
+        System.out.printf("Wrote %s in %.1f s%n", path, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,18 @@
+package Connect4;
+
+
+/**
+ * The <code>SearchAlgorithm</code> enum lists the tree searches <code>ComputerPlayer</code> can use, set with
+ * <code>ComputerPlayer.setSearchAlgorithm</code>. Both find the same score for a board.
+ */
+public enum SearchAlgorithm {
+    // Minimax with alpha-beta pruning, searching every move with the full window
+    MINIMAX,
+
+    // Principal variation search: negamax which searches the first move with the full window and the others with a
+    // null window, searching them again only if they turn out to be better. From the third iteration on, iterative
+    // deepening starts each iteration with an aspiration window around the score of the iteration two plies
+    // shallower rather than the previous one: the evaluation favours the player who moved last at the leaves, so the
+    // scores of odd and even depths swing apart, while depths of the same parity end on the same player and agree.
+    PRINCIPAL_VARIATION
+}
@@ -0,0 +1,41 @@
+package Connect4;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * The <code>SearchEvent</code> class is the Java Flight Recorder event committed at the end of every search for the
+ * best move. Its duration is the latency of the search. It is only recorded when a recording with the
+ * <code>Connect4.Search</code> event enabled is running.
+ */
+@Name("Connect4.Search")
+@Label("Search")
+@Category("Connect4")
+@Description("A search for the best move")
+@StackTrace(false)
+class SearchEvent extends jdk.jfr.Event {
+    @Label("Move")
+    int move;
+
+    @Label("Depth Reached")
+    int depthReached;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Leaf Evaluations")
+    long leafEvaluations;
+
+    @Label("Beta Cutoffs")
+    long betaCutoffs;
+
+    @Label("First Move Cutoffs")
+    long firstMoveCutoffs;
+
+    @Label("Table Hits")
+    long tableHits;
+}
@@ -0,0 +1,23 @@
+package Connect4;
+
+import java.time.Duration;
+
+
+/**
+ * The <code>SearchLimits</code> record sets how far a search for the best move may go: up to a maximum depth, and if
+ * <code>budget</code> is not null, for at most that long, using iterative deepening.
+ */
+public record SearchLimits(int depth, Duration budget) {
+
+    /**
+     * @param depth how many moves ahead to search
+     * @return limits for a search of fixed depth, with no time limit
+     */
+    public static SearchLimits depth(int depth) { return new SearchLimits(depth, null); }
+
+    /**
+     * @param budget how long the search may take
+     * @return limits for an iterative deepening search which stops only when the time budget runs out
+     */
+    public static SearchLimits time(Duration budget) { return new SearchLimits(Integer.MAX_VALUE, budget); }
+}
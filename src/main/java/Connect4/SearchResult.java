@@ -0,0 +1,11 @@
+package Connect4;
+
+
+/**
+ * The <code>SearchResult</code> record holds the outcome of a search for the best move.
+ * @param move index of the column of the best move
+ * @param score the score of the board from the point of view of the player to move
+ * @param stats the work done by the search
+ */
+public record SearchResult(int move, int score, SearchStats stats) {
+}
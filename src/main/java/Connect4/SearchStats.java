@@ -0,0 +1,36 @@
+package Connect4;
+
+import java.time.Duration;
+
+
+/**
+ * The <code>SearchStats</code> record describes the work done by one search for the best move.
+ * @param nodes the number of boards visited
+ * @param leafEvaluations the number of boards scored with the heuristic
+ * @param betaCutoffs the number of nodes where the search stopped early because a move was good enough
+ * @param firstMoveCutoffs the number of cutoffs caused by the first move tried
+ * @param tableHits the number of boards found in the transposition table
+ * @param depthReached the depth of the last completed iteration
+ * @param elapsed how long the search took
+ */
+public record SearchStats(long nodes, long leafEvaluations, long betaCutoffs, long firstMoveCutoffs, long tableHits,
+                          int depthReached, Duration elapsed) {
+
+    /**
+     * @return the number of boards visited per second
+     */
+    public double nodesPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : nodes * 1e9 / nanos;
+    }
+
+    /**
+     * @return the fraction of the nodes which were cut off
+     */
+    public double cutoffRate() { return nodes == 0 ? 0 : (double) betaCutoffs / nodes; }
+
+    /**
+     * @return the fraction of the cutoffs which were caused by the first move tried, a measure of the move ordering
+     */
+    public double firstMoveCutoffRate() { return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs; }
+}
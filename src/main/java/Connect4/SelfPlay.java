@@ -0,0 +1,273 @@
+package Connect4;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The <code>SelfPlay</code> class plays many games between two configurations of <code>ComputerPlayer</code>, to
+ * compare heuristic weights and search depths. Nothing is shown on screen.
+ *
+ * Games are played in pairs from the same random opening, with the configurations swapping sides, so that neither
+ * gets the better side of an opening more often than the other. Pairs of games are tasks on a work-stealing pool, and
+ * each thread of the pool reuses one board and one player per configuration, each with its own transposition table,
+ * for all the games it plays.
+ */
+public class SelfPlay {
+
+    // Fields
+
+    // Memory for the transposition table of each player, in MB
+    private static final int TABLE_SIZE = 1;
+
+    private final Setup first;
+    private final Setup second;
+
+    private final int columns;
+    private final int rows;
+
+    // The number of random moves played at the start of every game
+    private final int openingMoves;
+
+    private final long seed;
+
+    // The board every opening starts from
+    private final BoardSnapshot emptyBoard;
+
+
+    /**
+     * A configuration of <code>ComputerPlayer</code>
+     * @param depth how many moves ahead the player searches
+     * @param weights the scores of the windows used by the heuristic evaluation
+     * @param evaluation the heuristic evaluation
+     */
+    public record Setup(int depth, HeuristicWeights weights, Evaluation evaluation) {
+
+        /**
+         * A configuration which uses the window evaluation
+         * @param depth how many moves ahead the player searches
+         * @param weights the scores of the windows used by the heuristic evaluation
+         */
+        public Setup(int depth, HeuristicWeights weights) {
+            this(depth, weights, Evaluation.WINDOWS);
+        }
+    }
+
+
+    /**
+     * The outcome of a match, from the point of view of the first configuration
+     * @param wins the number of games won by the first configuration
+     * @param draws the number of draws
+     * @param losses the number of games won by the second configuration
+     */
+    public record Outcome(long wins, long draws, long losses) {
+
+        /**
+         * @return the number of games played
+         */
+        public long games() { return wins + draws + losses; }
+
+        /**
+         * @return the average score of the first configuration per game, counting a draw as half a win
+         */
+        public double score() { return (wins + draws / 2.0) / games(); }
+
+        /**
+         * @return the Elo rating difference between the first and the second configuration
+         */
+        public double elo() { return elo(score()); }
+
+        /**
+         * @return the half-width of the 95% confidence interval of <code>elo</code>, computed from the variance of
+         * the score of a single game
+         */
+        public double eloError() {
+            double score = score();
+            double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) +
+                               losses * Math.pow(score, 2)) / games();
+            double margin = 1.96 * Math.sqrt(variance / games());
+            return (elo(score + margin) - elo(score - margin)) / 2;
+        }
+
+        /**
+         * @param score an average score per game
+         * @return the Elo rating difference which gives that expected score, clamped to avoid infinities
+         */
+        private static double elo(double score) {
+            score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+            return -400 * Math.log10(1 / score - 1);
+        }
+    }
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * @param columns number of columns of the board
+     * @param rows number of rows of the board
+     * @param first the first configuration
+     * @param second the second configuration
+     * @param openingMoves the number of random moves played at the start of every game
+     * @param seed the seed of the random openings, the same seed gives the same openings
+     */
+    public SelfPlay(int columns, int rows, Setup first, Setup second, int openingMoves, long seed) {
+        this.columns = columns;
+        this.rows = rows;
+        this.first = first;
+        this.second = second;
+        this.openingMoves = openingMoves;
+        this.seed = seed;
+        this.emptyBoard = new Model(columns, rows, true, 1).snapshot();
+    }
+
+
+    // Playing
+
+    /**
+     * Plays a match between the two configurations
+     * @param pairs the number of pairs of games, the match has twice as many games
+     * @param threads the number of threads which play games at the same time
+     * @return the outcome of the match
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the games
+     */
+    public Outcome play(int pairs, int threads) throws InterruptedException {
+        LongAdder wins = new LongAdder();
+        LongAdder draws = new LongAdder();
+        LongAdder losses = new LongAdder();
+        ThreadLocal<Players> players = ThreadLocal.withInitial(Players::new);
+
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        try {
+            Future<?>[] tasks = new Future<?>[pairs];
+            for (int pair = 0; pair < pairs; pair++) {
+                long pairSeed = seed + pair;
+                tasks[pair] = pool.submit(() -> {
+                    Players p = players.get();
+                    BoardSnapshot opening = opening(p.board, new SplittableRandom(pairSeed));
+
+                    for (int firstPlayer = 1; firstPlayer <= 2; firstPlayer++) {
+                        p.board.load(opening);
+                        int winner = playOut(p, firstPlayer);
+                        if (winner == 0)
+                            draws.increment();
+                        else if (winner == firstPlayer)
+                            wins.increment();
+                        else
+                            losses.increment();
+                    }
+                });
+            }
+
+            for (Future<?> task : tasks)
+                task.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return new Outcome(wins.sum(), draws.sum(), losses.sum());
+    }
+
+
+    /**
+     * The board and players of one thread, reused for all the games the thread plays
+     */
+    private class Players {
+        final Model board = new Model(columns, rows, true, 1);
+        final ComputerPlayer firstPlayer = createPlayer(first);
+        final ComputerPlayer secondPlayer = createPlayer(second);
+
+        /**
+         * @param setup a configuration
+         * @return a player with the configuration, searching on <code>board</code>
+         */
+        private ComputerPlayer createPlayer(Setup setup) {
+            ComputerPlayer player = new ComputerPlayer(board, new TranspositionTable(TABLE_SIZE));
+            player.setWeights(setup.weights());
+            player.setEvaluation(setup.evaluation());
+            return player;
+        }
+    }
+
+
+    /**
+     * Plays random moves from the empty board, avoiding the moves which end the game
+     * @param board the board to play on, which is cleared first
+     * @param random the source of the moves
+     * @return the board after the opening
+     */
+    private BoardSnapshot opening(Model board, SplittableRandom random) {
+        board.load(emptyBoard);
+
+        for (int i = 0; i < openingMoves; i++) {
+            int column = random.nextInt(columns);
+            if (!board.move(column))
+                continue;
+            if (board.isGameOver()) {
+                board.unmove(column);
+                continue;
+            }
+            board.swapPlayer();
+        }
+
+        return board.snapshot();
+    }
+
+
+    /**
+     * Plays a game to the end from the current board
+     * @param p the board and the players
+     * @param firstPlayer which player, 1 or 2, the first configuration plays
+     * @return the winner of the game, 0 for a draw
+     */
+    private int playOut(Players p, int firstPlayer) {
+        while (!p.board.isGameOver()) {
+            boolean firstToMove = p.board.getPlayer() == firstPlayer;
+            ComputerPlayer player = firstToMove ? p.firstPlayer : p.secondPlayer;
+            p.board.move(player.getMove(firstToMove ? first.depth() : second.depth()));
+            p.board.swapPlayer();
+        }
+        return p.board.getWinner();
+    }
+
+
+    /**
+     * Plays a match on the standard 7x6 board and prints the outcome.
+     * Launched with <code>mvn exec:java -Dexec.mainClass=Connect4.SelfPlay -Dexec.args="pairs depth1 depth2 weights1
+     * weights2 threads evaluation1 evaluation2"</code>, where the weights are six integers separated by commas, e.g.
+     * <code>100,16,8,-100,-32,-8</code>, and the evaluations are <code>WINDOWS</code> or <code>THREATS</code>.
+     * @param args the number of pairs of games, the depth and weights of each configuration, the number of threads and
+     * the evaluation of each configuration
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int firstDepth = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int secondDepth = args.length > 2 ? Integer.parseInt(args[2]) : firstDepth;
+        HeuristicWeights firstWeights = args.length > 3 ? HeuristicWeights.parse(args[3]) : HeuristicWeights.DEFAULT;
+        HeuristicWeights secondWeights = args.length > 4 ? HeuristicWeights.parse(args[4]) : HeuristicWeights.DEFAULT;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        Evaluation firstEvaluation = args.length > 6 ? Evaluation.valueOf(args[6]) : Evaluation.WINDOWS;
+        Evaluation secondEvaluation = args.length > 7 ? Evaluation.valueOf(args[7]) : Evaluation.WINDOWS;
+
+        SelfPlay match = new SelfPlay(7, 6, new Setup(firstDepth, firstWeights, firstEvaluation),
+                                      new Setup(secondDepth, secondWeights, secondEvaluation), 4, System.nanoTime());
+
+        long start = System.nanoTime();
+        Outcome outcome = match.play(pairs, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("depth %d, weights %s, %s  vs  depth %d, weights %s, %s%n", firstDepth, firstWeights,
+                          firstEvaluation, secondDepth, secondWeights, secondEvaluation);
+        System.out.printf("W %d  D %d  L %d  score %.3f  Elo %+.1f +/- %.1f%n", outcome.wins(), outcome.draws(),
+                          outcome.losses(), outcome.score(), outcome.elo() + 0.0, outcome.eloError());
+        System.out.printf("%d games in %.1f s: %.0f games/s on %d threads%n", outcome.games(), seconds,
+                          outcome.games() / seconds, threads);
+    }
+}
@@ -0,0 +1,411 @@
+package Connect4;
+
+import java.time.Duration;
+
+
+/**
+ * The <code>Solver</code> class computes the exact game-theoretic score of a board, assuming perfect play from both
+ * sides. It runs a negamax search with alpha-beta pruning on null windows, narrowing the range of possible scores the
+ * way MTD(f) does, on a copy of the bitboards kept in two <code>long</code> values, so a move costs a couple of
+ * arithmetic operations and never has to be undone.
+ * The search is pruned with the threats of both players: a player who can win right away always does, a player who
+ * has to block a threat plays only the block, and moves which let the opponent win right away are never tried.
+ * Bounds on the scores are kept in a <code>TranspositionTable</code>, and the scores of the first moves of the game can
+ * be read from an opening book, a <code>PositionDatabase</code> of type <code>KEY_BITBOARD</code>.
+ *
+ * The score of a board is positive if the player to move wins, negative if they lose and 0 for a draw. A win with
+ * the last chip of the board scores 1, and every chip the winner saves adds 1: a win with the player's own chip
+ * number <code>n</code> scores <code>(cells + 1) / 2 + 1 - n</code>.
+ */
+public class Solver {
+
+    // Fields
+
+    private final int width;
+    private final int height;
+
+    // Bitboard with the bottom cell of every column set, and bitboard with every cell of the board set
+    private final long bottomMask;
+    private final long boardMask;
+
+    // Columns from the center outwards, the order in which moves are tried
+    private final int[] columnOrder;
+
+    private final TranspositionTable table;
+
+    // Scores of the first moves of the game, null if there is no book
+    private final PositionDatabase book;
+
+    // System.nanoTime() after which the search must stop
+    private long deadline;
+
+    private boolean aborted;
+
+    // Number of boards visited by the current search
+    private long nodes;
+
+    // For each number of chips on the board, space to sort the moves of a node and their ordering keys
+    private final long[][] moveBuffers;
+    private final int[][] threatBuffers;
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * @param columns number of columns of the boards to solve
+     * @param rows number of rows of the boards to solve
+     * @param tableSizeInMegabytes the memory the transposition table may use, in MB
+     * @param book the scores of the first moves of the game, or null if there is none
+     * @throws IllegalArgumentException if the board does not fit in a single long, or if the book was generated for a
+     * board with different dimensions or does not hold exact scores
+     */
+    public Solver(int columns, int rows, int tableSizeInMegabytes, PositionDatabase book) {
+        if (columns * (rows + 1) > Long.SIZE)
+            throw new IllegalArgumentException("The solver only supports boards which fit in a single long");
+        if (book != null && book.getKeyType() != PositionDatabase.KEY_BITBOARD)
+            throw new IllegalArgumentException("The opening book does not hold exact scores");
+        if (book != null && (book.getColumns() != columns || book.getRows() != rows))
+            throw new IllegalArgumentException("The opening book is for a " + book.getColumns() + "x" +
+                                               book.getRows() + " board, not a " + columns + "x" + rows + " one");
+
+        this.width = columns;
+        this.height = rows;
+        this.table = new TranspositionTable(tableSizeInMegabytes);
+        this.book = book;
+
+        long bottom = 0;
+        for (int column = 0; column < columns; column++)
+            bottom |= 1L << column * (rows + 1);
+        this.bottomMask = bottom;
+        this.boardMask = bottom * ((1L << rows) - 1);
+
+        this.moveBuffers = new long[columns * rows + 1][columns];
+        this.threatBuffers = new int[columns * rows + 1][columns];
+
+        this.columnOrder = new int[columns];
+        for (int i = 0; i < columns; i++)
+            columnOrder[i] = columns / 2 + (i % 2 == 0 ? i / 2 : -(i + 1) / 2);
+    }
+
+
+    // Getters
+
+    /**
+     * @return the number of boards visited by the last search
+     */
+    public long getNodes() { return nodes; }
+
+    /**
+     * @return the transposition table of the solver
+     */
+    public TranspositionTable getTranspositionTable() { return table; }
+
+
+    // Solving
+
+    /**
+     * Computes the exact score of the board, taking as long as needed
+     * @param board the board to solve, which is not modified
+     * @return the score of the board from the point of view of the player to move
+     * @throws IllegalArgumentException if the game is already over
+     */
+    public int solve(Model board) {
+        startSearch(Long.MAX_VALUE);
+        return solveBoard(board);
+    }
+
+
+    /**
+     * Finds the move with the best exact score. The moves are tried from the center outwards, and the first of the
+     * best ones is returned.
+     * @param board the board to solve, which is not modified
+     * @param budget how long the search may take
+     * @return index of the column of the best move, or -1 if the board could not be solved in time
+     * @throws IllegalArgumentException if the game is already over
+     */
+    public int bestMove(Model board, Duration budget) {
+        startSearch(System.nanoTime() + budget.toNanos());
+        long current = board.getChips(board.getPlayer());
+        long mask = current | board.getChips(board.getOtherPlayer());
+        int moves = width * height - board.getFreeSpaces();
+
+        if (board.isGameOver())
+            throw new IllegalArgumentException("The game is already over");
+
+        // a win right away is always the best move
+        long wins = winningPositions(current, mask) & possible(mask);
+        for (int column : columnOrder)
+            if ((wins & columnMask(column)) != 0)
+                return column;
+
+        // on a symmetric board, the mirror image of a move is just as good as the move
+        boolean symmetric = board.isSymmetric();
+
+        int bestMove = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int column : columnOrder) {
+            long move = possible(mask) & columnMask(column);
+            if (move == 0 || (symmetric && column > board.mirror(column)))
+                continue;
+
+            // a move which lets the opponent win right away loses with the opponent's next chip
+            int score;
+            long next = current ^ mask;
+            if (moves + 1 == width * height)
+                score = 0;
+            else if ((winningPositions(next, mask | move) & possible(mask | move)) != 0)
+                score = -(width * height - moves) / 2;
+            else
+                score = -solve(next, mask | move, moves + 1);
+
+            if (aborted)
+                return -1;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = column;
+            }
+        }
+
+        return bestMove;
+    }
+
+
+    /**
+     * Computes the exact score of the board, unless the deadline passes first
+     * @param board the board to solve, which is not modified
+     * @param budget how long the search may take
+     * @return the score of the board from the point of view of the player to move, or <code>Integer.MIN_VALUE</code>
+     * if the board could not be solved in time
+     * @throws IllegalArgumentException if the game is already over
+     */
+    public int solve(Model board, Duration budget) {
+        startSearch(System.nanoTime() + budget.toNanos());
+        int score = solveBoard(board);
+        return aborted ? Integer.MIN_VALUE : score;
+    }
+
+
+    /**
+     * Resets the state of the search before solving a new board
+     * @param deadline System.nanoTime() after which the search must stop
+     */
+    private void startSearch(long deadline) {
+        this.deadline = deadline;
+        this.aborted = false;
+        this.nodes = 0;
+        table.newSearch();
+    }
+
+
+    /**
+     * @param board the board to solve, which is not modified
+     * @return the score of the board from the point of view of the player to move, meaningless if the search was
+     * aborted
+     */
+    private int solveBoard(Model board) {
+        if (board.isGameOver())
+            throw new IllegalArgumentException("The game is already over");
+
+        long current = board.getChips(board.getPlayer());
+        long mask = current | board.getChips(board.getOtherPlayer());
+        int moves = width * height - board.getFreeSpaces();
+
+        if ((winningPositions(current, mask) & possible(mask)) != 0)
+            return (width * height + 1 - moves) / 2;
+        return solve(current, mask, moves);
+    }
+
+
+    /**
+     * Narrows down the range of possible scores with null window searches, each of which tells whether the score is
+     * above or below a guess, until only one score is left. Guesses close to 0 are tried first, since they are
+     * cheaper to prove.
+     * @param current the chips of the player to move
+     * @param mask all the chips on the board
+     * @param moves the number of chips on the board
+     * @return the score of the board, which must not have an immediate win for the player to move
+     */
+    private int solve(long current, long mask, int moves) {
+        int min = -(width * height - moves) / 2;
+        int max = (width * height + 1 - moves) / 2;
+
+        while (min < max && !aborted) {
+            int guess = min + (max - min) / 2;
+            if (guess <= 0 && min / 2 < guess)
+                guess = min / 2;
+            else if (guess >= 0 && max / 2 > guess)
+                guess = max / 2;
+
+            int score = negamax(current, mask, moves, guess, guess + 1);
+            if (score <= guess)
+                max = score;
+            else
+                min = score;
+        }
+
+        return min;
+    }
+
+
+    /**
+     * Implements the negamax algorithm with alpha-beta pruning, pruned with the threats of both players.
+     * @param current the chips of the player to move
+     * @param mask all the chips on the board
+     * @param moves the number of chips on the board
+     * @param alpha the score the player to move can already achieve
+     * @param beta the score the opponent can already hold the player to move to
+     * @return the exact score if it is strictly between alpha and beta, otherwise a bound on the side of the window
+     * it is on
+     */
+    private int negamax(long current, long mask, int moves, int alpha, int beta) {
+        if ((++nodes & 4095) == 0 && System.nanoTime() >= deadline)
+            aborted = true;
+        if (aborted)
+            return 0;
+
+        long possible = possible(mask);
+        long opponentWins = winningPositions(current ^ mask, mask);
+
+        // the opponent threatens to win: the threat has to be blocked, and two threats can't both be blocked
+        long forced = possible & opponentWins;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0)
+                return -(width * height - moves) / 2;
+            possible = forced;
+        }
+
+        // never play right below a cell where the opponent would win
+        long nonLosing = possible & ~(opponentWins >>> 1);
+        if (nonLosing == 0)
+            return -(width * height - moves) / 2;
+
+        // neither player can win with the last two chips
+        if (moves >= width * height - 2)
+            return 0;
+
+        // the opponent can't win with their next chip, and the player can't win before their second next chip
+        int min = -(width * height - 2 - moves) / 2;
+        int max = (width * height - 1 - moves) / 2;
+
+        // a board and its mirror image have the same score, so they share one key
+        long key = current + mask;
+        key = Math.min(key, Model.mirror(key, width, height));
+        long hash = key * 0x9E3779B97F4A7C15L;
+        long entry = table.probe(hash);
+        if (entry != 0) {
+            if (TranspositionTable.bound(entry) == TranspositionTable.LOWER_BOUND)
+                min = Math.max(min, TranspositionTable.score(entry));
+            else
+                max = Math.min(max, TranspositionTable.score(entry));
+        } else if (book != null && moves <= book.getMaxPly()) {
+            int index = book.find(key);
+            if (index >= 0)
+                return book.getScore(index);
+        }
+
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta)
+                return alpha;
+        }
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta)
+                return beta;
+        }
+
+        // try the moves which create the most threats first, ties go to the column closer to the center
+        long[] candidates = moveBuffers[moves];
+        int[] threats = threatBuffers[moves];
+        int count = 0;
+        for (int column : columnOrder) {
+            long move = nonLosing & columnMask(column);
+            if (move == 0)
+                continue;
+
+            int score = Long.bitCount(winningPositions(current | move, mask));
+            int i = count++;
+            while (i > 0 && threats[i - 1] < score) {
+                candidates[i] = candidates[i - 1];
+                threats[i] = threats[i - 1];
+                i--;
+            }
+            candidates[i] = move;
+            threats[i] = score;
+        }
+
+        for (int i = 0; i < count; i++) {
+            long move = candidates[i];
+            int score = -negamax(current ^ mask, mask | move, moves + 1, -beta, -alpha);
+            if (aborted)
+                return 0;
+
+            if (score >= beta) {
+                table.store(hash, score, 0, TranspositionTable.LOWER_BOUND, -1);
+                return score;
+            }
+            if (score > alpha)
+                alpha = score;
+        }
+
+        table.store(hash, alpha, 0, TranspositionTable.UPPER_BOUND, -1);
+        return alpha;
+    }
+
+
+    // Bitboard operations
+
+    /**
+     * @param mask all the chips on the board
+     * @return the cells where a chip can be dropped
+     */
+    private long possible(long mask) {
+        return (mask + bottomMask) & boardMask;
+    }
+
+
+    /**
+     * @param column index of a column
+     * @return a bitboard with every cell of the column set
+     */
+    private long columnMask(int column) {
+        return ((1L << height) - 1) << column * (height + 1);
+    }
+
+
+    /**
+     * @param position the chips of one player
+     * @param mask all the chips on the board
+     * @return the empty cells which would give the player 4-in-a-row, whether or not a chip can be dropped there yet
+     */
+    long winningPositions(long position, long mask) {
+        // vertical
+        long result = (position << 1) & (position << 2) & (position << 3);
+
+        // horizontal and the two diagonals
+        result |= lineWins(position, height + 1);
+        result |= lineWins(position, height);
+        result |= lineWins(position, height + 2);
+
+        return result & (boardMask ^ mask);
+    }
+
+
+    /**
+     * @param position the chips of one player
+     * @param shift the distance between two neighbouring cells of a line in the bitboard
+     * @return the cells which complete 3 of the player's chips into 4-in-a-row along lines with the given shift
+     */
+    private static long lineWins(long position, int shift) {
+        long pair = (position << shift) & (position << 2 * shift);
+        long result = pair & (position << 3 * shift);
+        result |= pair & (position >>> shift);
+
+        pair = (position >>> shift) & (position >>> 2 * shift);
+        result |= pair & (position << shift);
+        result |= pair & (position >>> 3 * shift);
+        return result;
+    }
+}
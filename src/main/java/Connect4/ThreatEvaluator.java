@@ -0,0 +1,163 @@
+package Connect4;
+
+
+/**
+ * The <code>ThreatEvaluator</code> class scores the threats of a board: the empty cells which would give a player four
+ * in a row. All the threats of a player are found at once with shifts of its bitboard, using masks precomputed for
+ * the dimensions of the board, so scoring a leaf takes a few dozen bitwise operations and no loops.
+ *
+ * In the endgame the board fills up column by column, and which player is forced to play below a threat depends on
+ * the parity of its row. On a board with an even number of rows, the first player is the one who can hold a threat
+ * on an odd row (counting from 1 at the bottom) until the end, and the second player one on an even row, so those
+ * threats score more. A threat directly above a threat of the opponent is worthless, since the opponent wins first,
+ * and is not counted.
+ */
+final class ThreatEvaluator {
+
+    // Fields
+
+    // Score of a threat which is one move away from winning for the player to move
+    static final int PLAYABLE_THREAT = 500;
+
+    // Score of a threat on a row which suits its owner, and of any other threat
+    static final int GOOD_THREAT = 48;
+    static final int OTHER_THREAT = 12;
+
+    private final int rows;
+
+    // One bit at the bottom of every column
+    private final long bottomMask;
+
+    // Every cell of the board
+    private final long boardMask;
+
+    // The cells on odd rows, counting from 1 at the bottom, and on even rows
+    private final long oddRowsMask;
+    private final long evenRowsMask;
+
+    // True if the parity of a threat's row tells which player it suits
+    private final boolean parityMatters;
+
+
+    // Constructors
+
+    /**
+     * Constructor.
+     * Precomputes the masks for a board with the given dimensions
+     * @param columns number of columns in the board
+     * @param rows number of rows in the board
+     * @throws IllegalArgumentException if the bitboards of the board do not fit in a single long
+     */
+    ThreatEvaluator(int columns, int rows) {
+        if (columns * (rows + 1) > Long.SIZE)
+            throw new IllegalArgumentException("Threats can only be evaluated on boards of up to 64 bits");
+
+        this.rows = rows;
+
+        long bottom = 0;
+        for (int column = 0; column < columns; column++)
+            bottom |= 1L << column * (rows + 1);
+        this.bottomMask = bottom;
+        this.boardMask = bottom * ((1L << rows) - 1);
+
+        long oddRows = 0;
+        for (int height = 0; height < rows; height += 2)
+            oddRows |= bottom << height;
+        this.oddRowsMask = oddRows;
+        this.evenRowsMask = boardMask & ~oddRows;
+
+        this.parityMatters = rows % 2 == 0;
+    }
+
+
+    // Scoring
+
+    /**
+     * Scores the threats of both players
+     * @param board the board, which must fit in a single long
+     * @param player the player from whose point of view the board is scored
+     * @return the score of the player's threats minus the score of the opponent's threats
+     */
+    int getScore(Model board, int player) {
+        long own = board.getChips(player);
+        long opponent = board.getChips(3 - player);
+        long mask = own | opponent;
+        long free = boardMask & ~mask;
+
+        long ownThreats = winningCells(own) & free;
+        long opponentThreats = winningCells(opponent) & free;
+        long playable = (mask + bottomMask) & boardMask;
+
+        // whoever is to move wins at once with a playable threat, and the other player wins if the player to move
+        // cannot block all of its playable threats
+        boolean ownTurn = board.getPlayer() == player;
+        long moverThreats = ownTurn ? ownThreats : opponentThreats;
+        long waitingThreats = ownTurn ? opponentThreats : ownThreats;
+        if ((moverThreats & playable) != 0)
+            return ownTurn ? PLAYABLE_THREAT : -PLAYABLE_THREAT;
+        long forced = waitingThreats & playable;
+        if ((forced & (forced - 1)) != 0 || (forced & waitingThreats >>> 1) != 0)
+            return ownTurn ? -PLAYABLE_THREAT : PLAYABLE_THREAT;
+
+        // threats directly above a threat of the other player never come into play
+        long usefulOwn = ownThreats & ~(opponentThreats << 1);
+        long usefulOpponent = opponentThreats & ~(ownThreats << 1);
+
+        int plies = Long.bitCount(mask);
+        boolean ownFirst = (plies % 2 == 0) == ownTurn;
+        return threatScore(usefulOwn, ownFirst) - threatScore(usefulOpponent, !ownFirst);
+    }
+
+
+    /**
+     * @param threats the threats of one player
+     * @param first true if the player moved first in the game
+     * @return the score of the threats
+     */
+    private int threatScore(long threats, boolean first) {
+        if (!parityMatters)
+            return Long.bitCount(threats) * OTHER_THREAT;
+
+        long good = threats & (first ? oddRowsMask : evenRowsMask);
+        return Long.bitCount(good) * GOOD_THREAT + Long.bitCount(threats & ~good) * OTHER_THREAT;
+    }
+
+
+    /**
+     * Finds the cells which would complete four in a row for a player, whether they are empty or not. For each
+     * direction, a cell is a winning cell if the three cells on one side of it, or two on one side and one on the
+     * other, hold chips of the player. The extra bit on top of every column stops lines from wrapping around.
+     * @param chips the bitboard of the player
+     * @return the winning cells, which may include occupied cells and bits outside the board
+     */
+    private long winningCells(long chips) {
+        // vertical: only the three cells below can complete a line
+        long cells = (chips << 1) & (chips << 2) & (chips << 3);
+
+        // horizontal and both diagonals
+        int height = rows + 1;
+        cells |= winningCells(chips, height);
+        cells |= winningCells(chips, height - 1);
+        cells |= winningCells(chips, height + 1);
+
+        return cells;
+    }
+
+
+    /**
+     * @param chips the bitboard of a player
+     * @param shift the distance between two neighbouring cells of a line in the bitboard
+     * @return the winning cells of the player along lines of that direction
+     */
+    private static long winningCells(long chips, int shift) {
+        long pairs = (chips << shift) & (chips << 2 * shift);
+        long cells = pairs & (chips << 3 * shift);
+        cells |= pairs & (chips >>> shift);
+
+        pairs = (chips >>> shift) & (chips >>> 2 * shift);
+        cells |= pairs & (chips << shift);
+        cells |= pairs & (chips >>> 3 * shift);
+
+        return cells;
+    }
+}
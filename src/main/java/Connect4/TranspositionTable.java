@@ -0,0 +1,198 @@
+package Connect4;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The <code>TranspositionTable</code> class is a fixed-size cache of search results, indexed by the Zobrist hash of a
+ * board. The entries are kept in two primitive <code>long</code> arrays (one for the keys and one for the packed
+ * results), so storing and looking up a result never allocates.
+ * The table can be shared by several searching threads without locking: each key is stored XORed with its packed
+ * result, so an entry which was torn by two threads writing at once fails the key check and reads as a miss. The
+ * counters are <code>LongAdder</code>s, so they stay exact when the table is shared.
+ */
+public class TranspositionTable {
+
+    // Fields
+
+    // Types of score bounds which can be stored in an entry
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+
+    /* Layout of a packed entry:
+     *      - bits  0-31 -> score
+     *      - bits 32-39 -> depth
+     *      - bits 40-41 -> bound type
+     *      - bits 42-49 -> best move + 1 (0 if there is no best move)
+     *      - bits 50-57 -> generation of the search which stored the entry
+     *      - bit  63    -> set in every entry, so that 0 marks an empty slot
+     */
+    private static final long VALID = 1L << 63;
+
+    private final long[] keys;
+    private final long[] entries;
+
+    // Used to turn a hash into a slot index, the number of slots is always a power of 2
+    private final int mask;
+
+    // Incremented at the start of every search, or of every epoch when the table is shared by concurrent searches, so
+    // entries from older searches can be replaced first
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder overwrites = new LongAdder();
+
+
+    // Constructors
+
+    /**
+     * Public constructor.
+     * Allocates the largest power-of-2 number of entries which fits into <code>sizeInMegabytes</code>
+     * @param sizeInMegabytes the memory the table may use, in MB
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public TranspositionTable(int sizeInMegabytes) {
+        if (sizeInMegabytes <= 0)
+            throw new IllegalArgumentException("The size of the transposition table must be positive");
+
+        // each entry takes up one key and one packed result
+        long slots = Long.highestOneBit((long) sizeInMegabytes * 1024 * 1024 / (2 * Long.BYTES));
+        slots = Math.min(slots, 1 << 30);
+
+        this.keys = new long[(int) slots];
+        this.entries = new long[(int) slots];
+        this.mask = (int) slots - 1;
+    }
+
+
+    // Getters
+
+    /**
+     * @return the number of entries the table can hold
+     */
+    public int getCapacity() { return entries.length; }
+
+    /**
+     * @return the number of lookups which found an entry for the requested board
+     */
+    public long getHits() { return hits.sum(); }
+
+    /**
+     * @return the number of lookups which did not find an entry for the requested board
+     */
+    public long getMisses() { return misses.sum(); }
+
+    /**
+     * @return the number of times an entry for one board was replaced by an entry for a different board
+     */
+    public long getOverwrites() { return overwrites.sum(); }
+
+    /**
+     * @return the generation of the current search, from 0 to 255
+     */
+    int getGeneration() { return generation.get(); }
+
+
+    // Decoding entries
+
+    /**
+     * @param entry a packed entry returned by <code>probe</code>
+     * @return the score stored in the entry
+     */
+    public static int score(long entry) { return (int) entry; }
+
+    /**
+     * @param entry a packed entry returned by <code>probe</code>
+     * @return the depth of the search which produced the entry
+     */
+    public static int depth(long entry) { return (int) (entry >>> 32) & 0xFF; }
+
+    /**
+     * @param entry a packed entry returned by <code>probe</code>
+     * @return the type of the score bound: <code>EXACT</code>, <code>LOWER_BOUND</code> or <code>UPPER_BOUND</code>
+     */
+    public static int bound(long entry) { return (int) (entry >>> 40) & 0x3; }
+
+    /**
+     * @param entry a packed entry returned by <code>probe</code>
+     * @return the index of the column of the best move, or -1 if the entry has no best move
+     */
+    public static int move(long entry) { return ((int) (entry >>> 42) & 0xFF) - 1; }
+
+
+    // Using the table
+
+    /**
+     * Marks the start of a new search. Entries stored by earlier searches are replaced before entries of the current
+     * search, regardless of their depth. When the table is shared by concurrent searches, it should be called by their
+     * owner once in a while rather than by each search, or every search would treat the entries of the others as old.
+     * Can be called from any thread.
+     */
+    public void newSearch() { generation.updateAndGet(g -> (g + 1) & 0xFF); }
+
+
+    /**
+     * Removes all the entries and resets the counters
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+        hits.reset();
+        misses.reset();
+        overwrites.reset();
+    }
+
+
+    /**
+     * Looks up the entry for the board with the given hash
+     * @param hash Zobrist hash of the board
+     * @return the packed entry, or 0 if the table does not contain the board
+     */
+    public long probe(long hash) {
+        int slot = (int) hash & mask;
+        long entry = entries[slot];
+
+        if (entry != 0 && (keys[slot] ^ entry) == hash) {
+            hits.increment();
+            return entry;
+        }
+
+        misses.increment();
+        return 0;
+    }
+
+
+    /**
+     * Stores the result of a search. An existing entry for a different board is only replaced if it is from an older
+     * search or if it was searched to a depth no greater than <code>depth</code>.
+     * @param hash Zobrist hash of the board
+     * @param score score of the board
+     * @param depth depth to which the board was searched
+     * @param bound type of the score bound: <code>EXACT</code>, <code>LOWER_BOUND</code> or <code>UPPER_BOUND</code>
+     * @param move index of the column of the best move, or -1 if there is none
+     */
+    public void store(long hash, int score, int depth, int bound, int move) {
+        int slot = (int) hash & mask;
+        long old = entries[slot];
+        int generation = this.generation.get();
+
+        if (old != 0 && (keys[slot] ^ old) != hash) {
+            if (((int) (old >>> 50) & 0xFF) == generation && depth(old) > depth)
+                return;
+            overwrites.increment();
+        }
+
+        long entry = VALID
+                | ((long) generation << 50)
+                | ((long) (move + 1) << 42)
+                | ((long) bound << 40)
+                | ((long) Math.min(depth, 0xFF) << 32)
+                | (score & 0xFFFFFFFFL);
+        keys[slot] = hash ^ entry;
+        entries[slot] = entry;
+    }
+}
@@ -1,5 +1,9 @@
 package Connect4;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
 /**
  * The <code>View</code> class handles the display of the menu and the board on the screen.
  */
@@ -12,6 +16,10 @@ public class View {
      */
     static final char[] symbols = { '.', 'X', '0' };
 
+    // Draws the boards on the standard output, patching the cells which changed since the last one
+    private static final BoardRenderer renderer =
+            new BoardRenderer(new BufferedWriter(new OutputStreamWriter(System.out)), BoardRenderer.Mode.PLAIN);
+
 
     /**
      * Prints the selection of modes of play
@@ -20,6 +28,8 @@ public class View {
         System.out.println("Choose mode:");
         System.out.println("    1 - player vs player");
         System.out.println("    2 - player vs computer");
+        System.out.println("    3 - player vs computer (perfect play)");
+        System.out.println("    4 - player vs computer (thinks on your time)");
     }
 
 
@@ -28,34 +38,11 @@ public class View {
      * @param board reference to the Model
      */
     public static void showBoard(Model board) {
-        // top border
-        StringBuilder output = new StringBuilder();
-        output.append("-".repeat(Math.max(0, (board.getWidth() * 4 + 1))));
-        output.append('\n');
-
-        // column numbers
-        output.append("| ");
-        for (int i = 1; i <= board.getWidth(); i++) {
-            output.append(i).append(" | ");
-        }
-        output.append('\n');
-
-        // board top border
-        output.append("-".repeat(Math.max(0, (board.getWidth() * 4 + 1))));
-        output.append('\n');
-
-        // board
-        for (int i = 0; i < board.getHeight(); i++) {
-            output.append("| ");
-            for (int j = 0; j < board.getWidth(); j++) {
-                output.append(symbols[board.get(i, j)]).append(" | ");
-            }
-            output.append('\n');
+        try {
+            renderer.render(board);
+            renderer.flush();
+        } catch (IOException e) {
+            System.out.println("Error: the board could not be printed");
         }
-
-        // bottom boarder
-        output.append("-".repeat(Math.max(0, (board.getWidth() * 4 + 1))));
-
-        System.out.println(output);
     }
 }
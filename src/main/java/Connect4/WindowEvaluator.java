@@ -0,0 +1,195 @@
+package Connect4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The <code>WindowEvaluator</code> class keeps the heuristic score of a board up to date as chips are dropped and
+ * removed. The score is the sum of the scores of all 4-cell windows (horizontal, vertical and diagonal), and the score
+ * of a window only depends on how many of its cells each player occupies. The evaluator stores these counts for
+ * every window, so a move only has to update the windows which go through the changed cell, and reading the score of
+ * the board takes constant time and allocates nothing.
+ */
+class WindowEvaluator {
+
+    // Fields
+
+    /* Score of a window from the point of view of one player, indexed by [own chips][opponent chips], with the
+     * default weights:
+     *      - 4 own chips                  -> 100
+     *      - 3 own chips and 1 free cell  -> 16
+     *      - 2 own chips and 2 free cells -> 8
+     *      - the same for the opponent    -> -100, -32 and -8
+     */
+    private static final int[][] WINDOW_SCORES = new int[5][5];
+
+    static {
+        for (int own = 0; own <= 4; own++)
+            for (int opponent = 0; own + opponent <= 4; opponent++)
+                WINDOW_SCORES[own][opponent] = HeuristicWeights.DEFAULT.score(own, opponent);
+    }
+
+    // For each bit of the bitboard, the indices of all the windows which contain that cell
+    private final int[][] cellWindows;
+
+    // The number of chips of each player in each window
+    private final byte[] player1Counts;
+    private final byte[] player2Counts;
+
+    // The score of the whole board from the point of view of each player, with the default weights
+    private int player1Score;
+    private int player2Score;
+
+    // The number of windows with each combination of chips, indexed by [Player 1 chips * 5 + Player 2 chips], from
+    // which the score with any other weights is computed
+    private final int[] windowsByCounts;
+
+
+    // Constructors
+
+    /**
+     * Constructor.
+     * Lists all the windows of an empty board with the given dimensions
+     * @param columns number of columns in the board
+     * @param rows number of rows in the board
+     */
+    WindowEvaluator(int columns, int rows) {
+        // directions as (columns, rows) steps: horizontal, vertical and the two diagonals
+        int[][] directions = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } };
+
+        // the bits of the 4 cells of every window
+        List<int[]> windowBits = new ArrayList<>();
+        for (int[] d : directions)
+            for (int column = 0; column < columns; column++)
+                for (int height = 0; height < rows; height++) {
+                    int lastColumn = column + 3 * d[0];
+                    int lastHeight = height + 3 * d[1];
+                    if (lastColumn >= columns || lastHeight < 0 || lastHeight >= rows)
+                        continue;
+
+                    int[] bits = new int[4];
+                    for (int i = 0; i < 4; i++)
+                        bits[i] = (column + i * d[0]) * (rows + 1) + height + i * d[1];
+                    windowBits.add(bits);
+                }
+
+        int[] windowsPerCell = new int[columns * (rows + 1)];
+        for (int[] bits : windowBits)
+            for (int bit : bits)
+                windowsPerCell[bit]++;
+
+        this.cellWindows = new int[windowsPerCell.length][];
+        for (int bit = 0; bit < windowsPerCell.length; bit++)
+            cellWindows[bit] = new int[windowsPerCell[bit]];
+
+        for (int window = 0; window < windowBits.size(); window++)
+            for (int bit : windowBits.get(window))
+                cellWindows[bit][--windowsPerCell[bit]] = window;
+
+        int windows = windowBits.size();
+        this.player1Counts = new byte[windows];
+        this.player2Counts = new byte[windows];
+        this.windowsByCounts = new int[25];
+        windowsByCounts[0] = windows;
+    }
+
+
+    /**
+     * Copy constructor.
+     * The list of windows is shared, the counts are copied
+     * @param other the evaluator to copy
+     */
+    WindowEvaluator(WindowEvaluator other) {
+        this.cellWindows = other.cellWindows;
+        this.player1Counts = other.player1Counts.clone();
+        this.player2Counts = other.player2Counts.clone();
+        this.player1Score = other.player1Score;
+        this.player2Score = other.player2Score;
+        this.windowsByCounts = other.windowsByCounts.clone();
+    }
+
+
+    // Getters
+
+    /**
+     * @param player the player from whose point of view the board is scored
+     * @return the sum of the scores of all windows on the board
+     */
+    int getScore(int player) { return player == 1 ? player1Score : player2Score; }
+
+
+    /**
+     * @param player the player from whose point of view the board is scored
+     * @param weights the scores of the windows
+     * @return the sum of the scores of all windows on the board
+     */
+    int getScore(int player, HeuristicWeights weights) {
+        int score = 0;
+        for (int own = 2; own <= 4; own++) {
+            int ownWindows = player == 1 ? windowsByCounts[own * 5] : windowsByCounts[own];
+            int opponentWindows = player == 1 ? windowsByCounts[own] : windowsByCounts[own * 5];
+            score += ownWindows * weights.score(own, 0) + opponentWindows * weights.score(0, own);
+        }
+        return score;
+    }
+
+
+    // Updating the counts
+
+    /**
+     * Updates the windows which contain the cell at <code>bit</code> after a chip was dropped there
+     * @param bit the index of the cell in the bitboard
+     * @param player the player who owns the chip
+     */
+    void add(int bit, int player) { update(bit, player, 1); }
+
+    /**
+     * Updates the windows which contain the cell at <code>bit</code> after a chip was removed from there
+     * @param bit the index of the cell in the bitboard
+     * @param player the player who owned the chip
+     */
+    void remove(int bit, int player) { update(bit, player, -1); }
+
+
+    /**
+     * Removes all the chips from the counts
+     */
+    void clear() {
+        Arrays.fill(player1Counts, (byte) 0);
+        Arrays.fill(player2Counts, (byte) 0);
+        player1Score = 0;
+        player2Score = 0;
+        Arrays.fill(windowsByCounts, 0);
+        windowsByCounts[0] = player1Counts.length;
+    }
+
+
+    /**
+     * Changes the number of chips of <code>player</code> in every window containing the cell at <code>bit</code>,
+     * replacing the old score of each window with the new one
+     * @param bit the index of the cell in the bitboard
+     * @param player the player whose count changes
+     * @param change +1 if a chip was added, -1 if it was removed
+     */
+    private void update(int bit, int player, int change) {
+        byte[] counts = player == 1 ? player1Counts : player2Counts;
+
+        for (int window : cellWindows[bit]) {
+            int one = player1Counts[window];
+            int two = player2Counts[window];
+            player1Score -= WINDOW_SCORES[one][two];
+            player2Score -= WINDOW_SCORES[two][one];
+            windowsByCounts[one * 5 + two]--;
+
+            counts[window] += change;
+
+            one = player1Counts[window];
+            two = player2Counts[window];
+            player1Score += WINDOW_SCORES[one][two];
+            player2Score += WINDOW_SCORES[two][one];
+            windowsByCounts[one * 5 + two]++;
+        }
+    }
+}
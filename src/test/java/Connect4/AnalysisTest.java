@@ -0,0 +1,71 @@
+package Connect4;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Checks that <code>ComputerPlayer.analyze</code> limited to the best few lines returns the same moves and exact
+ * scores as the analysis of every move.
+ */
+class AnalysisTest {
+
+    private static final int DEPTH = 6;
+    private static final int LINES = 2;
+
+
+    @Test
+    void bestLinesHaveExactScores() {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int position = 0; position < 60; position++) {
+            Model board = new Model(7, 6, true, 1);
+            for (int chips = random.nextInt(12); chips > 0; ) {
+                int column = random.nextInt(7);
+                if (!board.move(column))
+                    continue;
+                if (board.isGameOver()) {
+                    board.unmove(column);
+                } else {
+                    board.swapPlayer();
+                    chips--;
+                }
+            }
+
+            Analysis all = new ComputerPlayer(new Model(board)).analyze(DEPTH);
+            Analysis best = new ComputerPlayer(new Model(board)).analyze(DEPTH, null, LINES, null);
+            String moves = board.snapshot().toMoves();
+
+            assertEquals(LINES, best.lines().size(), "lines of " + moves);
+            for (int i = 0; i < LINES; i++) {
+                Analysis.Line line = best.lines().get(i);
+                assertEquals(all.lines().get(i).score(), line.score(), "score of line " + i + " of " + moves);
+                assertEquals(score(all, line.column()), line.score(), "score of column " + line.column() + " of " +
+                                                                       moves);
+            }
+        }
+    }
+
+
+    @Test
+    void linesMustBePositive() {
+        ComputerPlayer computerPlayer = new ComputerPlayer(new Model(7, 6, true, 1));
+        assertThrows(IllegalArgumentException.class, () -> computerPlayer.analyze(4, null, 0, null));
+    }
+
+
+    /**
+     * @param analysis an analysis of every move
+     * @param column index of a column
+     * @return the score of the column in the analysis
+     */
+    private static int score(Analysis analysis, int column) {
+        for (Analysis.Line line : analysis.lines())
+            if (line.column() == column)
+                return line.score();
+        throw new AssertionError("column " + column + " is not analyzed");
+    }
+}
@@ -0,0 +1,86 @@
+package Connect4;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Checks that a <code>BoardRenderer</code> patches the cells of a move, and draws the whole board again when the chips
+ * of the same <code>Model</code> changed in a way the heights of its columns do not show.
+ */
+class BoardRendererTest {
+
+    @Test
+    void movesAreWrittenAsDeltas() throws IOException {
+        Model board = play("44");
+        StringWriter output = new StringWriter();
+        BoardRenderer renderer = new BoardRenderer(output, BoardRenderer.Mode.DELTA);
+        renderer.render(board);
+
+        output.getBuffer().setLength(0);
+        board.move(2);
+        renderer.render(board);
+        assertEquals(View.symbols[1] + " 3 1\n", output.toString());
+    }
+
+
+    @Test
+    void loadedGameIsDrawnAgain() throws IOException {
+        Model board = play("12");
+        StringWriter output = new StringWriter();
+        BoardRenderer renderer = new BoardRenderer(output, BoardRenderer.Mode.PLAIN);
+        renderer.render(board);
+
+        // the same heights, with the chips of the other player
+        board.load(play("21").snapshot());
+        output.getBuffer().setLength(0);
+        renderer.render(board);
+        assertEquals(drawn(board), output.toString());
+    }
+
+
+    @Test
+    void replacedChipIsDrawnAgain() throws IOException {
+        Model board = play("44");
+        StringWriter output = new StringWriter();
+        BoardRenderer renderer = new BoardRenderer(output, BoardRenderer.Mode.PLAIN);
+        renderer.render(board);
+
+        // Player 2's chip is taken back and Player 1 plays in the same column
+        board.unmove(3);
+        board.move(3);
+        output.getBuffer().setLength(0);
+        renderer.render(board);
+        assertEquals(drawn(board), output.toString());
+    }
+
+
+    /**
+     * @param board a board
+     * @return the text of the board drawn in full by a new renderer
+     * @throws IOException never, the text is written to a string
+     */
+    private static String drawn(Model board) throws IOException {
+        StringWriter output = new StringWriter();
+        new BoardRenderer(output, BoardRenderer.Mode.PLAIN).render(board);
+        return output.toString();
+    }
+
+
+    /**
+     * @param moves the 1-based columns played from the empty 7x6 board
+     * @return the board
+     */
+    private static Model play(String moves) {
+        Model board = new Model(7, 6, true, 1);
+        for (char move : moves.toCharArray()) {
+            board.move(move - '1');
+            board.swapPlayer();
+        }
+        return board;
+    }
+}
@@ -0,0 +1,197 @@
+package Connect4;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that the sessions recovered from a <code>GameJournal</code> are the ones which were recorded: with many
+ * threads appending at once, after a crash in the middle of a record or of a batch, and after the journal is opened
+ * again and more records are appended.
+ */
+class GameJournalTest {
+
+    private static final int COLUMNS = 7;
+    private static final int ROWS = 6;
+
+    // Threads appending at once, and the sessions each of them plays
+    private static final int THREADS = 8;
+    private static final int SESSIONS = 40;
+
+
+    @Test
+    void concurrentAppendsAreAllRecovered(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("journal.bin");
+        Map<Long, BoardSnapshot> expected = new ConcurrentHashMap<>();
+        AtomicLong records = new AtomicLong();
+
+        try (GameJournal journal = GameJournal.open(path, COLUMNS, ROWS, Duration.ofMillis(1))) {
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int thread = t;
+                    futures.add(pool.submit(() -> {
+                        SplittableRandom random = new SplittableRandom(thread);
+                        for (int i = 1; i <= SESSIONS; i++) {
+                            long session = thread * 1000L + i;
+                            records.addAndGet(playSession(journal, session, random, expected));
+                            if (i % 4 == 0)
+                                journal.sync();
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures)
+                    future.get();
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        assertEquals(GameJournal.HEADER_BYTES + records.get() * GameJournal.RECORD_BYTES, Files.size(path));
+        assertRecovered(expected, (THREADS - 1) * 1000L + SESSIONS, GameJournal.recover(path));
+    }
+
+
+    @Test
+    void partlyWrittenRecordIsCutOff(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("journal.bin");
+        Map<Long, BoardSnapshot> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(1);
+
+        long records;
+        try (GameJournal journal = GameJournal.open(path, COLUMNS, ROWS, Duration.ZERO)) {
+            records = playSession(journal, 1, random, expected) + playSession(journal, 2, random, expected);
+        }
+        long length = GameJournal.HEADER_BYTES + records * GameJournal.RECORD_BYTES;
+
+        // a crash in the middle of a record leaves a few bytes of it
+        Files.write(path, new byte[] { 7, -3, 42, 0, -128 }, StandardOpenOption.APPEND);
+        assertRecovered(expected, 2, GameJournal.recover(path));
+        long[] count = { 0 };
+        GameJournal.read(path, (session, column) -> count[0]++);
+        assertEquals(records, count[0]);
+
+        // opening the journal again cuts them off, and the records appended after them are recovered
+        try (GameJournal journal = GameJournal.open(path, COLUMNS, ROWS, Duration.ZERO)) {
+            assertEquals(length, Files.size(path));
+            playSession(journal, 3, random, expected);
+            journal.append(1, GameJournal.END_SESSION);
+            expected.remove(1L);
+        }
+        assertRecovered(expected, 3, GameJournal.recover(path));
+    }
+
+
+    @Test
+    void recordsOfZerosAreSkipped(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("journal.bin");
+        Map<Long, BoardSnapshot> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(2);
+
+        try (GameJournal journal = GameJournal.open(path, COLUMNS, ROWS, Duration.ZERO)) {
+            playSession(journal, 5, random, expected);
+        }
+
+        // a crash after the file grew but before the batch reached the disk leaves whole records of zeros
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(3 * GameJournal.RECORD_BYTES), channel.size());
+        }
+        try (GameJournal journal = GameJournal.open(path, COLUMNS, ROWS, Duration.ZERO)) {
+            playSession(journal, 6, random, expected);
+        }
+
+        assertRecovered(expected, 6, GameJournal.recover(path));
+        GameJournal.read(path, (session, column) -> assertTrue(session == 5 || session == 6,
+                                                               "record of session " + session));
+    }
+
+
+    @Test
+    void invalidRecordsAreRejected(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("journal.bin");
+        try (GameJournal journal = GameJournal.open(path, COLUMNS, ROWS, Duration.ZERO)) {
+            assertThrows(IllegalArgumentException.class, () -> journal.append(0, GameJournal.NEW_GAME));
+            assertThrows(IllegalArgumentException.class, () -> journal.append(1, COLUMNS));
+            assertThrows(IllegalArgumentException.class, () -> journal.append(1, GameJournal.END_SESSION - 1));
+        }
+
+        assertThrows(IOException.class, () -> GameJournal.open(path, 8, 6, Duration.ZERO).close());
+        assertArrayEquals(new int[] { COLUMNS, ROWS }, GameJournal.read(path, (session, column) -> {}));
+    }
+
+
+    /**
+     * Records a game of random moves in a session, which ends the session one time in three
+     * @param journal the journal
+     * @param session the id of the session
+     * @param random the source of the moves
+     * @param expected receives the board of the session if it has not ended
+     * @return the number of records appended
+     * @throws IOException if the journal failed
+     */
+    private static int playSession(GameJournal journal, long session, SplittableRandom random,
+                                   Map<Long, BoardSnapshot> expected) throws IOException {
+        Model board = new Model(COLUMNS, ROWS, true, 1);
+        journal.append(session, GameJournal.NEW_GAME);
+        int records = 1;
+
+        int moves = random.nextInt(COLUMNS * ROWS);
+        while (moves-- > 0 && !board.isGameOver()) {
+            int column = random.nextInt(COLUMNS);
+            if (board.move(column)) {
+                board.swapPlayer();
+                journal.append(session, column);
+                records++;
+            }
+        }
+
+        if (random.nextInt(3) == 0) {
+            journal.append(session, GameJournal.END_SESSION);
+            return records + 1;
+        }
+        expected.put(session, board.snapshot());
+        return records;
+    }
+
+
+    /**
+     * @param expected the board of every session which has not ended
+     * @param lastSession the greatest session id recorded
+     * @param recovery what was recovered from the journal
+     */
+    private static void assertRecovered(Map<Long, BoardSnapshot> expected, long lastSession,
+                                        GameJournal.Recovery recovery) {
+        assertEquals(COLUMNS, recovery.columns());
+        assertEquals(ROWS, recovery.rows());
+        assertEquals(lastSession, recovery.lastSession());
+        assertEquals(expected.keySet(), recovery.sessions().keySet());
+        for (Map.Entry<Long, BoardSnapshot> session : expected.entrySet())
+            assertEquals(session.getValue(), recovery.sessions().get(session.getKey()).snapshot(),
+                         "board of session " + session.getKey());
+    }
+}
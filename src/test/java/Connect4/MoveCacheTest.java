@@ -0,0 +1,223 @@
+package Connect4;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that concurrent requests for a board and its mirror image share one search and get the move oriented to
+ * their own board, that a failed search lets the waiting requests search for themselves, and that W-TinyLFU keeps
+ * popular boards through a scan of one-off boards which flushes LRU.
+ */
+class MoveCacheTest {
+
+    private static final SearchLimits LIMITS = SearchLimits.depth(8);
+
+    // Requests sent at once for the same board
+    private static final int THREADS = 16;
+
+
+    @Test
+    void concurrentRequestsShareOneSearchAndAreMirrored() throws Exception {
+        MoveCache cache = new MoveCache(1000, Long.MAX_VALUE, MoveCache.Eviction.TINY_LFU);
+        AtomicInteger searches = new AtomicInteger();
+
+        // the searching request holds its result until every other request is waiting for it
+        int[] moves = new int[THREADS];
+        runAtOnce(THREADS, i -> {
+            boolean mirrored = i % 2 == 1;
+            Model board = play(mirrored ? "76" : "12");
+            SearchResult result = cache.get(board, LIMITS, () -> {
+                searches.incrementAndGet();
+                awaitCoalesced(cache, THREADS - 1);
+                return result(mirrored ? board.mirror(1) : 1);
+            });
+            moves[i] = result.move();
+        });
+
+        assertEquals(1, searches.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(THREADS - 1, cache.getCoalesced());
+        for (int i = 0; i < THREADS; i++)
+            assertEquals(i % 2 == 0 ? 1 : 5, moves[i], "move of request " + i);
+
+        // later requests are hits, still oriented to their board
+        assertEquals(1, cache.get(play("12"), LIMITS, MoveCacheTest::fail).move());
+        assertEquals(5, cache.get(play("76"), LIMITS, MoveCacheTest::fail).move());
+        assertEquals(2, cache.getHits());
+    }
+
+
+    @Test
+    void waitingRequestsSearchAgainWhenTheSearchFails() throws Exception {
+        MoveCache cache = new MoveCache(1000, Long.MAX_VALUE, MoveCache.Eviction.LRU);
+        AtomicInteger searches = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+
+        runAtOnce(2, i -> {
+            Model board = play("4");
+            try {
+                SearchResult result = cache.get(board, LIMITS, () -> {
+                    if (searches.incrementAndGet() == 1) {
+                        awaitCoalesced(cache, 1);
+                        throw new IllegalStateException("search failed");
+                    }
+                    return result(3);
+                });
+                assertEquals(3, result.move());
+            } catch (IllegalStateException e) {
+                failures.incrementAndGet();
+            }
+        });
+
+        assertEquals(2, searches.get());
+        assertEquals(1, failures.get());
+    }
+
+
+    @Test
+    void tinyLfuKeepsPopularBoardsThroughAScan() {
+        List<BoardSnapshot> boards = distinctBoards(2600);
+        List<BoardSnapshot> popular = boards.subList(0, 50);
+        List<BoardSnapshot> scan = boards.subList(50, boards.size());
+
+        // the popular boards are requested 10 times, so at most 9 * 50 requests can be hits
+        long lru = hits(MoveCache.Eviction.LRU, popular, scan);
+        long tinyLfu = hits(MoveCache.Eviction.TINY_LFU, popular, scan);
+        assertTrue(lru < 50, "LRU hits " + lru);
+        assertTrue(tinyLfu >= 400, "W-TinyLFU hits " + tinyLfu);
+    }
+
+
+    /**
+     * Requests the popular boards, then 250 one-off boards, over and over, with a cache of 100 entries
+     * @return the number of hits of the cache
+     */
+    private static long hits(MoveCache.Eviction eviction, List<BoardSnapshot> popular, List<BoardSnapshot> scan) {
+        MoveCache cache = new MoveCache(100, Long.MAX_VALUE, eviction);
+        Model board = new Model(7, 6, true, 1);
+        int next = 0;
+        while (next + 250 <= scan.size()) {
+            for (BoardSnapshot position : popular) {
+                board.load(position);
+                cache.get(board, LIMITS, () -> result(3));
+            }
+            for (int i = 0; i < 250; i++) {
+                board.load(scan.get(next++));
+                cache.get(board, LIMITS, () -> result(3));
+            }
+        }
+        return cache.getHits();
+    }
+
+
+    /**
+     * @param count the number of boards
+     * @return boards of the opening, none of them the same as another or its mirror image
+     */
+    private static List<BoardSnapshot> distinctBoards(int count) {
+        List<BoardSnapshot> boards = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        Model board = new Model(7, 6, true, 1);
+        collect(board, 5, count, seen, boards);
+        assertEquals(count, boards.size());
+        return boards;
+    }
+
+
+    private static void collect(Model board, int plies, int count, Set<Long> seen, List<BoardSnapshot> boards) {
+        if (boards.size() == count || board.isGameOver())
+            return;
+        if (seen.add(board.getCanonicalHash()))
+            boards.add(board.snapshot());
+        if (plies == 0)
+            return;
+        for (int column = 0; column < board.getWidth(); column++) {
+            if (board.move(column)) {
+                board.swapPlayer();
+                collect(board, plies - 1, count, seen, boards);
+                board.swapPlayer();
+                board.unmove(column);
+            }
+        }
+    }
+
+
+    /**
+     * Runs <code>task</code> on <code>threads</code> threads which all start at the same moment
+     */
+    private static void runAtOnce(int threads, IndexedTask task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CyclicBarrier start = new CyclicBarrier(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int index = i;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    task.run(index);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    private interface IndexedTask {
+        void run(int index) throws Exception;
+    }
+
+
+    /**
+     * Waits until the cache has counted <code>count</code> requests waiting for a search in progress
+     */
+    private static void awaitCoalesced(MoveCache cache, int count) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (cache.getCoalesced() < count) {
+            if (System.nanoTime() > deadline)
+                throw new AssertionError("only " + cache.getCoalesced() + " requests waited for the search");
+            Thread.onSpinWait();
+        }
+    }
+
+
+    /**
+     * @param moves the 1-based columns played from the empty 7x6 board
+     * @return the board
+     */
+    private static Model play(String moves) {
+        Model board = new Model(7, 6, true, 1);
+        for (char move : moves.toCharArray()) {
+            board.move(move - '1');
+            board.swapPlayer();
+        }
+        return board;
+    }
+
+
+    private static SearchResult result(int move) {
+        return new SearchResult(move, 0, new SearchStats(1, 0, 0, 0, 0, 8, Duration.ZERO));
+    }
+
+
+    private static SearchResult fail() {
+        throw new AssertionError("the board should have been cached");
+    }
+}
@@ -0,0 +1,35 @@
+package Connect4;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+
+/**
+ * Checks that pondering finds answers in the computer's transposition table without starting new generations of it,
+ * which would make the entries of the computer's last search look old.
+ */
+class PondererTest {
+
+    @Test
+    void ponderingKeepsTheGenerationOfTheTable() throws InterruptedException {
+        Model board = new Model(7, 6, true, 1);
+        for (int column : new int[] { 3, 3, 2 }) {
+            board.move(column);
+            board.swapPlayer();
+        }
+
+        TranspositionTable table = new TranspositionTable(16);
+        new ComputerPlayer(new Model(board), table).search(6);
+        int generation = table.getGeneration();
+
+        Ponderer ponderer = new Ponderer(board, table);
+        ponderer.start();
+        Thread.sleep(300);
+        SearchResult answer = ponderer.stop(4);
+
+        assertNotNull(answer);
+        assertEquals(generation, table.getGeneration());
+    }
+}
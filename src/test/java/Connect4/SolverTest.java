@@ -0,0 +1,213 @@
+package Connect4;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks the exact scores of the <code>Solver</code> and of the opening books made from them against a plain negamax
+ * over every move, on boards small enough to search exhaustively.
+ */
+class SolverTest {
+
+    // The small boards the positions are taken from, as { columns, rows }
+    private static final int[][] SIZES = { { 4, 4 }, { 5, 4 }, { 4, 5 } };
+
+    // Random positions per board size
+    private static final int POSITIONS = 60;
+
+
+    @Test
+    void solveMatchesExhaustiveSearch() {
+        for (int[] size : SIZES) {
+            Solver solver = new Solver(size[0], size[1], 16, null);
+            Reference reference = new Reference(size[0] * size[1]);
+
+            for (Model board : positions(size[0], size[1], new SplittableRandom(size[0] * 31L + size[1]))) {
+                String position = describe(board);
+                int expected = reference.score(board);
+                assertEquals(expected, solver.solve(board), "score of " + position);
+            }
+        }
+    }
+
+
+    @Test
+    void bestMoveIsOptimal() {
+        for (int[] size : SIZES) {
+            Solver solver = new Solver(size[0], size[1], 16, null);
+            Reference reference = new Reference(size[0] * size[1]);
+
+            for (Model board : positions(size[0], size[1], new SplittableRandom(size[0] * 17L + size[1]))) {
+                String position = describe(board);
+                int move = solver.bestMove(board, Duration.ofMinutes(1));
+                assertTrue(move >= 0 && board.getColumnHeight(move) < board.getHeight(), "legal move in " + position);
+                assertEquals(reference.score(board), reference.moveScore(board, move),
+                             "score of move " + (move + 1) + " in " + position);
+            }
+        }
+    }
+
+
+    @Test
+    void bookHoldsTheExactScoreOfEveryBoard(@TempDir Path directory) throws IOException {
+        int columns = 4;
+        int rows = 4;
+        int maxPly = 6;
+        Path path = directory.resolve("book.bin");
+        PositionDatabase.generateBook(path, columns, rows, maxPly, new Solver(columns, rows, 16, null));
+
+        PositionDatabase book = PositionDatabase.open(path);
+        assertEquals(PositionDatabase.KEY_BITBOARD, book.getKeyType());
+        assertEquals(maxPly, book.getMaxPly());
+
+        Reference reference = new Reference(columns * rows);
+        Set<Long> keys = new HashSet<>();
+        visit(new Model(columns, rows, false, 1), maxPly, board -> {
+            long key = PositionDatabase.bitboardKey(board);
+            keys.add(key);
+            int index = book.find(key);
+            assertTrue(index >= 0, "missing " + describe(board));
+            assertEquals(reference.score(board), book.getScore(index), "score of " + describe(board));
+            assertEquals(PositionDatabase.EXACT_DEPTH, book.getDepth(index));
+        });
+        assertEquals(keys.size(), book.size());
+
+        // a solver reading the book still finds the exact scores
+        Solver withBook = new Solver(columns, rows, 16, book);
+        for (Model board : positions(columns, rows, new SplittableRandom(7)))
+            assertEquals(reference.score(board), withBook.solve(board), "score with the book of " + describe(board));
+    }
+
+
+    /**
+     * Plays random moves from the empty board, avoiding the moves which end the game
+     * @param columns number of columns
+     * @param rows number of rows
+     * @param random the source of the moves
+     * @return positions with between 2 and 12 chips, none of them over
+     */
+    private static List<Model> positions(int columns, int rows, SplittableRandom random) {
+        List<Model> positions = new ArrayList<>();
+        while (positions.size() < POSITIONS) {
+            Model board = new Model(columns, rows, false, 1);
+            int chips = 2 + random.nextInt(11);
+            for (int attempts = 0; board.getFreeSpaces() > columns * rows - chips && attempts < 100; attempts++) {
+                int column = random.nextInt(columns);
+                if (!board.move(column))
+                    continue;
+                if (board.isGameOver())
+                    board.unmove(column);
+                else
+                    board.swapPlayer();
+            }
+            if (!board.isGameOver())
+                positions.add(board);
+        }
+        return positions;
+    }
+
+
+    /**
+     * Calls <code>visitor</code> with every board reachable from <code>board</code> with at most <code>maxPly</code>
+     * chips which is not over
+     * @param board the current board
+     * @param maxPly the largest number of chips of a visited board
+     * @param visitor receives the boards
+     */
+    private static void visit(Model board, int maxPly, Consumer<Model> visitor) {
+        if (board.isGameOver())
+            return;
+        visitor.accept(board);
+        if (board.getWidth() * board.getHeight() - board.getFreeSpaces() == maxPly)
+            return;
+
+        for (int column = 0; column < board.getWidth(); column++) {
+            if (board.move(column)) {
+                board.swapPlayer();
+                visit(board, maxPly, visitor);
+                board.swapPlayer();
+                board.unmove(column);
+            }
+        }
+    }
+
+
+    /**
+     * @param board a board
+     * @return the moves of the board, for failure messages
+     */
+    private static String describe(Model board) {
+        return board.getWidth() + "x" + board.getHeight() + " board " + board.snapshot().toMoves();
+    }
+
+
+    /**
+     * Scores boards with a negamax over every move, without pruning, remembering the score of every board it has
+     * seen. A win scores <code>(cells + 1 - chips) / 2</code>, where <code>chips</code> is the number of chips before
+     * the winning one, the same scale as the <code>Solver</code>.
+     */
+    private static final class Reference {
+        private final int cells;
+        private final Map<Long, Integer> scores = new HashMap<>();
+
+        Reference(int cells) {
+            this.cells = cells;
+        }
+
+        /**
+         * @param board a board which is not over, left unchanged
+         * @return the exact score of the board for the player to move
+         */
+        int score(Model board) {
+            long key = board.getChips(board.getPlayer()) + (board.getChips(1) | board.getChips(2));
+            Integer known = scores.get(key);
+            if (known != null)
+                return known;
+
+            int best = Integer.MIN_VALUE;
+            for (int column = 0; column < board.getWidth(); column++)
+                if (board.getColumnHeight(column) < board.getHeight())
+                    best = Math.max(best, moveScore(board, column));
+            scores.put(key, best);
+            return best;
+        }
+
+        /**
+         * @param board a board which is not over, left unchanged
+         * @param column index of a column which is not full
+         * @return the exact score of playing the column, for the player to move
+         */
+        int moveScore(Model board, int column) {
+            int chips = cells - board.getFreeSpaces();
+            board.move(column);
+            int score;
+            if (board.getWinner() != 0) {
+                score = (cells + 1 - chips) / 2;
+            } else if (board.isGameOver()) {
+                score = 0;
+            } else {
+                board.swapPlayer();
+                score = -score(board);
+                board.swapPlayer();
+            }
+            board.unmove(column);
+            return score;
+        }
+    }
+}